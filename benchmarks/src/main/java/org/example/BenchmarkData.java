@@ -0,0 +1,25 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+// Syntetyczne oferty o rozkładzie cen zbliżonym do rzeczywistego (ok. 2000 PLN, kilka tanich odstających)
+final class BenchmarkData {
+    private static final String[] LOCATIONS = {"Warszawa", "Kraków", "Łódź", "Wrocław", "Poznań", "Gdańsk", "Sochaczew"};
+
+    private BenchmarkData() {
+    }
+
+    static OfferBatch offers(String model, String storage, int count, LocalDate today, int days, Random random) {
+        int bucketId = OfferBuckets.idOf(model, storage);
+        OfferBatch batch = new OfferBatch(count);
+        for (int i = 0; i < count; i++) {
+            double price = i % 50 == 0 ? 300 + random.nextInt(500) : 2000 + random.nextGaussian() * 250;
+            batch.add(model + " " + storage, Math.max(price, 50.0),
+                    "https://www.olx.pl/d/oferta/benchmark-ID" + Integer.toHexString(i) + ".html",
+                    today.minusDays(random.nextInt(days)), "", LOCATIONS[i % LOCATIONS.length],
+                    random.nextInt(3) == 0, bucketId);
+        }
+        return batch;
+    }
+}
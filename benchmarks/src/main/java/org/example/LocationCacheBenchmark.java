@@ -0,0 +1,55 @@
+package org.example;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// Czas wczytania cache’a lokalizacji z pliku JSON (start aplikacji)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class LocationCacheBenchmark {
+    @Param({"1000", "10000"})
+    private int entryCount;
+
+    private File directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("location_cache").toFile();
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < entryCount; i++) {
+            JSONObject coords = new JSONObject();
+            coords.put("latitude", 49.0 + (i % 500) * 0.01);
+            coords.put("longitude", 14.1 + (i / 500) * 0.05);
+            json.put("Miejscowość " + i, coords);
+        }
+        Files.write(new File(directory, "location_cache.json").toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public double[] load() {
+        try (LocationCacheManager cacheManager = LocationCacheManager.open(directory)) {
+            return cacheManager.getCoordinates("Miejscowość 0");
+        }
+    }
+}
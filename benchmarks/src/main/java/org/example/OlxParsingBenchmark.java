@@ -0,0 +1,109 @@
+package org.example;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+// Parsowanie kart ofert z zapisanej strony wyników (także z pamięcią kart) oraz parsePrice/parseDate
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OlxParsingBenchmark {
+    private static final String FIXTURE = "/fixtures/olx_search_page.html";
+
+    private static final String[] PRICES = {
+            "2 499 zł", "3 117 zł do negocjacji", "899,99 zł", "Zamienię", "1 050 zł", "do negocjacji", "4 200 zł"
+    };
+    private static final String[] DATES = {
+            "Warszawa, Mokotów - Dzisiaj o 18:03", "Katowice - Odświeżono dnia 19 września 2026",
+            "Łódź, Bałuty - 3 października 2026", "Sochaczew - 28 września 2026"
+    };
+
+    private final OlxScraper scraper = new OlxScraper();
+    private Elements offerElements;
+    private String trackedHtml;
+    private Elements trackedOfferElements;
+    private QueryPlanner.Query singleModelQuery;
+    private QueryPlanner.Query multiModelQuery;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream input = OlxParsingBenchmark.class.getResourceAsStream(FIXTURE)) {
+            if (input == null) {
+                throw new IOException("Brak pliku " + FIXTURE);
+            }
+            Document doc = Jsoup.parse(input, StandardCharsets.UTF_8.name(), "https://www.olx.pl/");
+            offerElements = doc.select(OlxScraper.OFFER_CONTAINER_SELECTOR);
+        }
+        // Ta sama strona sparsowana jak w OlxScraper.fetchAsync (z pozycjami w źródle)
+        try (InputStream input = OlxParsingBenchmark.class.getResourceAsStream(FIXTURE)) {
+            trackedHtml = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Document trackedDoc = Jsoup.parse(trackedHtml, "https://www.olx.pl/", Parser.htmlParser().setTrackPosition(true));
+        trackedOfferElements = trackedDoc.select(OlxScraper.OFFER_CONTAINER_SELECTOR);
+        singleModelQuery = new QueryPlanner.Query(Collections.singletonList("iPhone 13 Pro"), "128GB");
+        multiModelQuery = new QueryPlanner.Query(Arrays.asList(
+                "iPhone 13", "iPhone 13 Pro", "iPhone 13 Pro Max", "iPhone 14", "iPhone 14 Pro", "iPhone 15"), "128GB");
+    }
+
+    @Benchmark
+    public OfferBatch parsePageSingleModel() {
+        OfferBatch batch = new OfferBatch(offerElements.size());
+        for (Element element : offerElements) {
+            scraper.parseOffer(element, singleModelQuery, batch);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public OfferBatch parsePageMultiModel() {
+        OfferBatch batch = new OfferBatch(offerElements.size());
+        for (Element element : offerElements) {
+            scraper.parseOffer(element, multiModelQuery, batch);
+        }
+        return batch;
+    }
+
+    // Po pierwszym wywołaniu wszystkie karty są trafieniami w pamięci kart (odświeżenie niezmienionej strony)
+    @Benchmark
+    public OfferBatch parsePageCachedCards() {
+        OfferBatch batch = new OfferBatch(trackedOfferElements.size());
+        for (Element element : trackedOfferElements) {
+            scraper.parseOffer(element, trackedHtml, multiModelQuery, batch);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public double parsePrice() {
+        double sum = 0.0;
+        for (String price : PRICES) {
+            sum += scraper.parsePrice(price);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long parseDate() {
+        long sum = 0;
+        for (String date : DATES) {
+            LocalDate parsed = scraper.parseDate(date);
+            sum += parsed != null ? parsed.toEpochDay() : 0;
+        }
+        return sum;
+    }
+}
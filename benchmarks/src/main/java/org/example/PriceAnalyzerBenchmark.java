@@ -0,0 +1,42 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Statystyki cen i z-score dla jednej kombinacji przy 1k/10k/100k ofert
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceAnalyzerBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int offerCount;
+
+    private OfferBatch offers;
+
+    @Setup
+    public void setUp() {
+        offers = BenchmarkData.offers("iPhone 13 Pro", "128GB", offerCount, LocalDate.now(), 30, new Random(42));
+    }
+
+    @Benchmark
+    public PriceStats overallStats() {
+        return new PriceAnalyzer(offers).getOverallPriceStats(new ArrayList<>());
+    }
+
+    @Benchmark
+    public ZScores statsAndZScoresByProtection() {
+        PriceAnalyzer analyzer = new PriceAnalyzer(offers);
+        List<Offer> outliers = new ArrayList<>();
+        ZScores withProtection = analyzer.getZScoresWithProtection(analyzer.getPriceStatsWithProtection(outliers));
+        ZScores withoutProtection = analyzer.getZScoresWithoutProtection(analyzer.getPriceStatsWithoutProtection(outliers));
+        return withProtection.of(2000.0) < withoutProtection.of(2000.0) ? withProtection : withoutProtection;
+    }
+}
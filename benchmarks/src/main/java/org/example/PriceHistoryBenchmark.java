@@ -0,0 +1,74 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Odczyt historii cen (getHistoricalPrices / analyzePriceTrend) przy typowych rozmiarach historii:
+// plik JSON (pełny odczyt przy każdym zapytaniu) i baza H2 (zakres na indeksie złożonym)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceHistoryBenchmark {
+    private static final String[] MODELS = {"iPhone 13", "iPhone 13 Pro", "iPhone 14", "iPhone 14 Pro", "iPhone 15"};
+    private static final String[] STORAGES = {"128GB", "256GB"};
+
+    @Param({"10000", "100000"})
+    private int recordCount;
+
+    @Param({"json", "h2"})
+    private String store;
+
+    private File historyFile;
+    private PriceHistoryStore historyStore;
+    private PriceHistoryManager historyManager;
+
+    @Setup
+    public void setUp() throws IOException {
+        historyFile = Files.createTempFile("price_history", ".json").toFile();
+        if (store.equals("h2")) {
+            historyFile.delete();
+            historyStore = PriceHistoryManager.openH2(historyFile.getPath());
+        } else {
+            historyStore = new JsonPriceHistoryStore(historyFile.getPath());
+        }
+        historyManager = new PriceHistoryManager(historyStore);
+
+        // Historia z 90 dni rozłożona na kilka kombinacji model + pojemność
+        Random random = new Random(42);
+        OfferBatch records = new OfferBatch(recordCount);
+        int perBucket = recordCount / (MODELS.length * STORAGES.length);
+        for (String model : MODELS) {
+            for (String storage : STORAGES) {
+                records.addAll(BenchmarkData.offers(model, storage, perBucket, LocalDate.now(), 90, random));
+            }
+        }
+        historyManager.savePrices(records);
+    }
+
+    @TearDown
+    public void tearDown() {
+        historyStore.close();
+        historyFile.delete();
+        new File(historyFile.getPath() + ".mv.db").delete();
+    }
+
+    @Benchmark
+    public List<PriceHistoryManager.PriceRecord> getHistoricalPrices() {
+        return historyManager.getHistoricalPrices("iPhone 13 Pro", "128GB", false);
+    }
+
+    @Benchmark
+    public String analyzePriceTrend() {
+        return historyManager.analyzePriceTrend("iPhone 13 Pro", "128GB", false, 2100.0);
+    }
+}
@@ -0,0 +1,176 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Lokalny zastępnik OLX (i Nominatim) do pomiarów bez ruchu sieciowego:
+// serwuje nagrane strony wyników z zadanym opóźnieniem, losowymi odpowiedziami 429 i głębokością paginacji
+public class ReplayServer implements AutoCloseable {
+    private static final String FIXTURE = "/fixtures/olx_search_page.html";
+    private static final Pattern PAGE_PATTERN = Pattern.compile("[?&]page=(\\d+)");
+    private static final Pattern QUERY_PATTERN = Pattern.compile("[?&]q=([^&]*)");
+    private static final Pattern NEXT_PAGE_LINK = Pattern.compile("<a data-testid=\"pagination-forward\"[^>]*>.*?</a>");
+    private static final Pattern CARD_PATTERN = Pattern.compile("<div class=\"css-1sw7q4x\".*?</div>", Pattern.DOTALL);
+
+    private final HttpServer server;
+    private final List<String> pages;
+    private final int pageDepth;
+    private final long latencyMs;
+    private final double tooManyRequestsRate;
+
+    private final AtomicLong pagesServed = new AtomicLong();
+    private final AtomicLong tooManyRequests = new AtomicLong();
+    private final AtomicLong geocodingRequests = new AtomicLong();
+    private final ConcurrentLinkedQueue<Long> pageLatenciesNanos = new ConcurrentLinkedQueue<>();
+
+    // port 0 = dowolny wolny port; latencyMs to średnie opóźnienie (losowane z zakresu 0.5x–1.5x)
+    public ReplayServer(int port, List<String> pages, int pageDepth, long latencyMs, double tooManyRequestsRate) throws IOException {
+        this.pages = pages;
+        this.pageDepth = pageDepth;
+        this.latencyMs = latencyMs;
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/elektronika/", this::handleSearch);
+        server.createContext("/search", this::handleGeocoding);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    // Strony z katalogu (kolejne pliki .html w kolejności nazw) lub wbudowana strona testowa
+    public static List<String> loadPages(String directory) throws IOException {
+        List<String> pages = new ArrayList<>();
+        if (directory != null) {
+            File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".html"));
+            if (files != null) {
+                Arrays.sort(files);
+                for (File file : files) {
+                    pages.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            try (InputStream input = ReplayServer.class.getResourceAsStream(FIXTURE)) {
+                if (input == null) {
+                    throw new IOException("Brak pliku " + FIXTURE);
+                }
+                pages.add(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return pages;
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            simulateLatency();
+            if (ThreadLocalRandom.current().nextDouble() < tooManyRequestsRate) {
+                tooManyRequests.incrementAndGet();
+                respond(exchange, 429, "text/plain", "Too Many Requests");
+                return;
+            }
+
+            Matcher pageMatcher = PAGE_PATTERN.matcher(exchange.getRequestURI().getRawQuery() != null
+                    ? "?" + exchange.getRequestURI().getRawQuery() : "");
+            int page = pageMatcher.find() ? Integer.parseInt(pageMatcher.group(1)) : 1;
+
+            String html = pages.get((page - 1) % pages.size());
+            if (page > pageDepth) {
+                html = CARD_PATTERN.matcher(html).replaceAll(""); // Za ostatnią stroną: brak ofert
+            }
+            if (page >= pageDepth) {
+                html = NEXT_PAGE_LINK.matcher(html).replaceAll("");
+            }
+            pagesServed.incrementAndGet();
+            respond(exchange, 200, "text/html; charset=UTF-8", html);
+        } finally {
+            pageLatenciesNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    // Deterministyczne współrzędne w granicach Polski wyliczane z nazwy miejscowości
+    private void handleGeocoding(HttpExchange exchange) throws IOException {
+        geocodingRequests.incrementAndGet();
+        simulateLatency();
+        Matcher queryMatcher = QUERY_PATTERN.matcher("?" + exchange.getRequestURI().getRawQuery());
+        int hash = queryMatcher.find() ? queryMatcher.group(1).hashCode() : 0;
+        double latitude = 49.0 + Math.floorMod(hash, 5000) / 1000.0;
+        double longitude = 14.1 + Math.floorMod(hash >>> 8, 9900) / 1000.0;
+        respond(exchange, 200, "application/json",
+                String.format(Locale.ROOT, "[{\"lat\":\"%.6f\",\"lon\":\"%.6f\"}]", latitude, longitude));
+    }
+
+    private void simulateLatency() {
+        if (latencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMs / 2 + ThreadLocalRandom.current().nextLong(latencyMs + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    public long getPagesServed() {
+        return pagesServed.get();
+    }
+
+    public long getTooManyRequests() {
+        return tooManyRequests.get();
+    }
+
+    public long getGeocodingRequests() {
+        return geocodingRequests.get();
+    }
+
+    public long[] getPageLatenciesNanos() {
+        return pageLatenciesNanos.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    // Samodzielne uruchomienie: ReplayServer [port] [głębokość paginacji] [opóźnienie ms] [odsetek 429] [katalog stron]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 150;
+        double rate429 = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+        ReplayServer replayServer = new ReplayServer(port, loadPages(args.length > 4 ? args[4] : null), depth, latency, rate429);
+        System.out.println("Serwer replay działa pod adresem " + replayServer.getBaseUrl()
+                + " (uruchom aplikację z -Dolx.baseUrl=" + replayServer.getBaseUrl()
+                + " -Dnominatim.baseUrl=" + replayServer.getBaseUrl() + ")");
+    }
+}
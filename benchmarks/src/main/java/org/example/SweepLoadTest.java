@@ -0,0 +1,107 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Test obciążeniowy pełnego przebiegu dziennej rekomendacji na lokalnym serwerze replay:
+// strony/s, oferty/s i opóźnienia (mediana i ogon) bez ruchu do OLX i Nominatim.
+// Opcje (-D): replay.depth, replay.latencyMs, replay.rate429, replay.pages (katalog nagranych stron)
+public class SweepLoadTest {
+    private static final List<String> MODELS = Arrays.asList(
+            "iPhone 13", "iPhone 13 Pro", "iPhone 13 Pro Max", "iPhone 14", "iPhone 14 Pro", "iPhone 15");
+    private static final List<String> STORAGES = Arrays.asList("128GB", "256GB", "512GB");
+    private static final List<String> STATES = Arrays.asList("used");
+
+    public static void main(String[] args) throws IOException {
+        int depth = Integer.getInteger("replay.depth", 5);
+        long latencyMs = Long.getLong("replay.latencyMs", 150);
+        double rate429 = Double.parseDouble(System.getProperty("replay.rate429", "0.0"));
+
+        try (ReplayServer server = new ReplayServer(0, ReplayServer.loadPages(System.getProperty("replay.pages")),
+                depth, latencyMs, rate429)) {
+            // Adresy muszą być ustawione przed pierwszym użyciem OlxScraper/DistanceCalculator
+            System.setProperty("olx.baseUrl", server.getBaseUrl());
+            System.setProperty("nominatim.baseUrl", server.getBaseUrl());
+            System.setProperty("nominatim.minIntervalMs", "0");
+
+            ExecutorService executor = Executors.newFixedThreadPool(4); // Jak EXECUTOR w Main
+            OlxScraper scraper = new OlxScraper();
+            List<CompletableFuture<Long>> queryTimes = new ArrayList<>();
+            List<CompletableFuture<BucketTable<OfferBatch>>> results = new ArrayList<>();
+            List<QueryPlanner.Query> queries = new ArrayList<>();
+
+            long start = System.nanoTime();
+            for (String storage : STORAGES) {
+                for (QueryPlanner.Query query : QueryPlanner.plan(MODELS, storage)) {
+                    long queryStart = System.nanoTime();
+                    CompletableFuture<BucketTable<OfferBatch>> result = CompletableFuture.supplyAsync(
+                            () -> scraper.scrapeQuery(query, "", STATES), executor);
+                    queries.add(query);
+                    results.add(result);
+                    queryTimes.add(result.thenApply(ignored -> System.nanoTime() - queryStart));
+                }
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+            long scrapeNanos = System.nanoTime() - start;
+            executor.shutdown();
+
+            long offers = 0;
+            Set<String> locations = new LinkedHashSet<>();
+            for (int i = 0; i < queries.size(); i++) {
+                for (int bucketId : queries.get(i).getBucketIds()) {
+                    OfferBatch batch = results.get(i).join().get(bucketId);
+                    offers += batch.size();
+                    locations.addAll(batch.locationDictionary());
+                }
+            }
+
+            // Geokodowanie lokalizacji z wyników (słownik + serwer replay zamiast Nominatim)
+            File cacheDirectory = Files.createTempDirectory("replay_location_cache").toFile();
+            long geocodingNanos;
+            try (LocationCacheManager cacheManager = LocationCacheManager.open(cacheDirectory)) {
+                DistanceCalculator distanceCalculator = new DistanceCalculator(cacheManager);
+                long geocodingStart = System.nanoTime();
+                distanceCalculator.prefetchCoordinates(locations).join();
+                geocodingNanos = System.nanoTime() - geocodingStart;
+            }
+
+            double scrapeSeconds = scrapeNanos / 1e9;
+            System.out.println("\n=== Wyniki testu obciążeniowego (replay) ===");
+            System.out.printf("Zapytania: %d, głębokość paginacji: %d, opóźnienie: %d ms, odsetek 429: %.2f\n",
+                    queries.size(), depth, latencyMs, rate429);
+            System.out.printf("Czas skanowania: %.2f s\n", scrapeSeconds);
+            System.out.printf("Strony: %d (%.1f/s), odpowiedzi 429: %d\n",
+                    server.getPagesServed(), server.getPagesServed() / scrapeSeconds, server.getTooManyRequests());
+            System.out.printf("Oferty: %d (%.1f/s)\n", offers, offers / scrapeSeconds);
+            printPercentiles("Opóźnienie strony", server.getPageLatenciesNanos());
+            printPercentiles("Czas zapytania", queryTimes.stream().mapToLong(CompletableFuture::join).toArray());
+            System.out.printf("Geokodowanie: %d lokalizacji w %.2f s (zapytania do serwera: %d)\n",
+                    locations.size(), geocodingNanos / 1e9, server.getGeocodingRequests());
+        }
+        System.exit(0); // Wątki puli OlxScraper nie są demonami
+    }
+
+    private static void printPercentiles(String label, long[] nanos) {
+        if (nanos.length == 0) {
+            System.out.println(label + ": brak pomiarów");
+            return;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%s [ms]: p50 %.1f, p95 %.1f, p99 %.1f, max %.1f\n", label,
+                percentile(nanos, 0.50), percentile(nanos, 0.95), percentile(nanos, 0.99), nanos[nanos.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sortedNanos, double fraction) {
+        int index = (int) Math.ceil(fraction * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+    }
+}
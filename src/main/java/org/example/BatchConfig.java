@@ -0,0 +1,176 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Ustawienia trybu wsadowego (bez menu): plik JSON (--config plik.json) i argumenty --klucz=wartość
+// lub --klucz wartość, które nadpisują wartości z pliku. Listy podawane są po przecinku.
+public class BatchConfig {
+    public static final String USAGE = String.join("\n",
+            "Użycie: java -jar olx-scraper.jar --models \"iPhone 13,iPhone 14\" --storages 128GB,256GB [opcje]",
+            "  --config plik.json   ustawienia z pliku (te same klucze co opcje)",
+            "  --states new,used    stany (new, used, damaged); domyślnie wszystkie",
+            "  --location Warszawa  lokalizacja; kilka miast po przecinku = punkty odbioru",
+            "  --radiusKm 50        promień od punktów odbioru",
+            "  --todayOnly          tylko oferty z dzisiaj",
+            "  --format jsonl|csv   format wyników (domyślnie jsonl)",
+            "  --output plik        plik wynikowy; '-' lub brak = standardowe wyjście",
+            "Samo API zapytań bez skanowania: java -Dapi.port=8080 -jar olx-scraper.jar --serve",
+            "Przeniesienie historii do bazy H2 lub partycji (-Dhistory.store=partitioned):",
+            "  java -jar olx-scraper.jar --migrate-history [price_history.json] [price_history]");
+
+    private static final List<String> KNOWN_STATES = Arrays.asList("new", "used", "damaged");
+
+    private final List<String> models;
+    private final List<String> storages;
+    private final List<String> states;
+    private final String location;
+    private final double radiusKm;
+    private final boolean todayOnly;
+    private final ResultStreamWriter.Format format;
+    private final String output;
+
+    public BatchConfig(List<String> models, List<String> storages, List<String> states, String location, double radiusKm,
+                       boolean todayOnly, ResultStreamWriter.Format format, String output) {
+        this.models = models;
+        this.storages = storages;
+        this.states = states;
+        this.location = location;
+        this.radiusKm = radiusKm;
+        this.todayOnly = todayOnly;
+        this.format = format;
+        this.output = output;
+    }
+
+    public static BatchConfig parse(String[] args) throws IOException {
+        JSONObject settings = new JSONObject();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Nieznany argument: " + arg);
+            }
+            String key = arg.substring(2);
+            String value;
+            int equals = key.indexOf('=');
+            if (equals >= 0) {
+                value = key.substring(equals + 1);
+                key = key.substring(0, equals);
+            } else if (key.equals("todayOnly")) {
+                value = "true";
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("Brak wartości dla --" + key);
+            }
+
+            if (key.equals("config")) {
+                JSONObject file = new JSONObject(new String(Files.readAllBytes(new File(value).toPath()), StandardCharsets.UTF_8));
+                for (String fileKey : file.keySet()) {
+                    if (!settings.has(fileKey)) {
+                        settings.put(fileKey, file.get(fileKey));
+                    }
+                }
+            } else {
+                settings.put(key, value);
+            }
+        }
+
+        List<String> models = list(settings, "models");
+        List<String> storages = list(settings, "storages");
+        if (models.isEmpty() || storages.isEmpty()) {
+            throw new IllegalArgumentException("Wymagane są co najmniej --models i --storages");
+        }
+        List<String> states = new ArrayList<>();
+        for (String state : list(settings, "states")) {
+            String normalized = state.toLowerCase(Locale.ROOT);
+            if (!KNOWN_STATES.contains(normalized)) {
+                throw new IllegalArgumentException("Nieznany stan: " + state + " (dozwolone: new, used, damaged)");
+            }
+            states.add(normalized);
+        }
+
+        String formatName = settings.optString("format", "jsonl").toUpperCase(Locale.ROOT);
+        ResultStreamWriter.Format format;
+        try {
+            format = ResultStreamWriter.Format.valueOf(formatName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Nieznany format: " + formatName.toLowerCase(Locale.ROOT) + " (dozwolone: jsonl, csv)");
+        }
+
+        double radiusKm;
+        try {
+            radiusKm = Double.parseDouble(settings.optString("radiusKm", "50").replace(",", "."));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Nieprawidłowy promień: " + settings.optString("radiusKm"));
+        }
+        if (radiusKm <= 0) {
+            throw new IllegalArgumentException("Promień musi być większy od zera.");
+        }
+
+        return new BatchConfig(models, storages, states, settings.optString("location", "").trim(), radiusKm,
+                Boolean.parseBoolean(settings.optString("todayOnly", "false")), format, settings.optString("output", "-"));
+    }
+
+    // Wartość listy: tablica JSON (z pliku) albo tekst rozdzielony przecinkami
+    private static List<String> list(JSONObject settings, String key) {
+        if (!settings.has(key)) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        JSONArray array = settings.optJSONArray(key);
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                values.add(array.getString(i).trim());
+            }
+        } else {
+            for (String value : settings.getString(key).split(",")) {
+                if (!value.trim().isEmpty()) {
+                    values.add(value.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    public List<String> getModels() {
+        return models;
+    }
+
+    public List<String> getStorages() {
+        return storages;
+    }
+
+    public List<String> getStates() {
+        return states;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    public boolean isTodayOnly() {
+        return todayOnly;
+    }
+
+    public ResultStreamWriter.Format getFormat() {
+        return format;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+}
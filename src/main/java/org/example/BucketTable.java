@@ -0,0 +1,43 @@
+package org.example;
+
+import java.util.Arrays;
+
+// Tablica pomocnicza indeksowana identyfikatorem koszyka (zamiast HashMap z kluczami tekstowymi)
+public class BucketTable<T> {
+    private Object[] values;
+
+    public BucketTable() {
+        values = new Object[Math.max(OfferBuckets.size(), 8)];
+    }
+
+    public void put(int bucketId, T value) {
+        if (bucketId >= values.length) {
+            values = Arrays.copyOf(values, Math.max(bucketId + 1, values.length * 2));
+        }
+        values[bucketId] = value;
+    }
+
+    // Kopiuje niepuste wpisy z innej tablicy (łączenie wyników częściowych)
+    @SuppressWarnings("unchecked")
+    public void putAll(BucketTable<T> other) {
+        for (int i = 0; i < other.values.length; i++) {
+            if (other.values[i] != null) {
+                put(i, (T) other.values[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int bucketId) {
+        return bucketId >= 0 && bucketId < values.length ? (T) values[bucketId] : null;
+    }
+
+    public T getOrDefault(int bucketId, T defaultValue) {
+        T value = get(bucketId);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean contains(int bucketId) {
+        return get(bucketId) != null;
+    }
+}
@@ -0,0 +1,102 @@
+package org.example;
+
+import org.jsoup.nodes.Element;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pamięć sparsowanych kart ofert między kolejnymi skanowaniami: klucz to identyfikator ogłoszenia,
+// a wpis jest użyty tylko wtedy, gdy skrót surowego fragmentu HTML karty się nie zmienił.
+// Trafienie pomija selektory, wyrażenia regularne i parsowanie ceny oraz daty.
+public class CardCache {
+    private static final int MAX_ENTRIES = 50_000; // Po przekroczeniu pamięć czyszczona jest w całości
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<String, Card> cards = new ConcurrentHashMap<>();
+
+    // Wynik parsowania karty niezależny od zapytania; rejectReason != null dla kart odrzuconych
+    static final class Card {
+        final long fingerprint;
+        final String title;
+        final double price;
+        final String url;
+        final LocalDate date;
+        final String dateStatus;
+        final String location;
+        final boolean hasProtectionPackage;
+        final String rejectReason;
+        final String rejectMessage;
+
+        Card(long fingerprint, String title, double price, String url, LocalDate date, String dateStatus,
+             String location, boolean hasProtectionPackage) {
+            this(fingerprint, title, price, url, date, dateStatus, location, hasProtectionPackage, null, null);
+        }
+
+        private Card(long fingerprint, String title, double price, String url, LocalDate date, String dateStatus,
+                     String location, boolean hasProtectionPackage, String rejectReason, String rejectMessage) {
+            this.fingerprint = fingerprint;
+            this.title = title;
+            this.price = price;
+            this.url = url;
+            this.date = date;
+            this.dateStatus = dateStatus;
+            this.location = location;
+            this.hasProtectionPackage = hasProtectionPackage;
+            this.rejectReason = rejectReason;
+            this.rejectMessage = rejectMessage;
+        }
+
+        static Card rejected(long fingerprint, String title, String reason, String message) {
+            return new Card(fingerprint, title, 0.0, "", null, "", "", false, reason, message);
+        }
+    }
+
+    Card get(String adId, long fingerprint) {
+        Card card = cards.get(adId);
+        if (card != null && card.fingerprint == fingerprint) {
+            Metrics.increment("olx_card_cache_hits_total", "Karty ofert użyte ponownie bez parsowania");
+            return card;
+        }
+        Metrics.increment("olx_card_cache_misses_total", "Karty ofert parsowane od nowa (nowe lub zmienione)");
+        return null;
+    }
+
+    void put(String adId, Card card) {
+        if (cards.size() >= MAX_ENTRIES) {
+            cards.clear();
+        }
+        cards.put(adId, card);
+    }
+
+    public int size() {
+        return cards.size();
+    }
+
+    // FNV-1a (64 bity) po znakach fragmentu [start, end) źródła strony. Dzień parsowania wchodzi do skrótu,
+    // bo "Dzisiaj o ..." oznacza inną datę po północy.
+    static long fingerprint(String html, int start, int end, long epochDay) {
+        long hash = FNV_OFFSET ^ epochDay;
+        for (int i = start; i < end; i++) {
+            hash ^= html.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Identyfikator ogłoszenia: atrybut id karty, a gdy go brak – pierwszy href w surowym fragmencie; null, gdy brak obu
+    static String adId(Element card, String html, int start, int end) {
+        String id = card.id();
+        if (!id.isEmpty()) {
+            return id;
+        }
+        int href = html.indexOf("href=\"", start);
+        if (href < 0 || href >= end) {
+            return null;
+        }
+        int valueStart = href + 6;
+        int valueEnd = html.indexOf('"', valueStart);
+        return valueEnd < 0 || valueEnd > end ? null : html.substring(valueStart, valueEnd);
+    }
+}
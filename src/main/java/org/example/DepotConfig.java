@@ -0,0 +1,99 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// Punkty odbioru (magazyny) z pliku depots.json; domyślnie Sochaczew
+public class DepotConfig {
+    private static final String CONFIG_FILE = "depots.json";
+    private static final String DEFAULT_NAME = "Sochaczew";
+    private static final double DEFAULT_LAT = 52.2294;
+    private static final double DEFAULT_LON = 20.2384;
+    private static final double DEFAULT_COST_PER_KM = 0.2; // Koszt dojazdu uwzględniany w rankingu ofert (PLN/km)
+
+    private final List<String> names;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double costPerKm;
+
+    public DepotConfig(List<String> names, double[] latitudes, double[] longitudes, double costPerKm) {
+        this.names = names;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.costPerKm = costPerKm;
+    }
+
+    // Format pliku: {"costPerKm": 0.2, "depots": [{"name": "Sochaczew", "latitude": 52.2, "longitude": 20.2}, {"name": "Łódź"}]}
+    // Punkty bez współrzędnych są geokodowane przez DistanceCalculator.
+    public static DepotConfig load(DistanceCalculator distanceCalculator) {
+        File file = new File(CONFIG_FILE);
+        if (!file.exists()) {
+            return defaults();
+        }
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            JSONArray depots = json.optJSONArray("depots");
+            List<String> names = new ArrayList<>();
+            List<double[]> coordinates = new ArrayList<>();
+            if (depots != null) {
+                for (int i = 0; i < depots.length(); i++) {
+                    JSONObject depot = depots.getJSONObject(i);
+                    String name = depot.getString("name");
+                    double[] coords = depot.has("latitude") && depot.has("longitude")
+                            ? new double[]{depot.getDouble("latitude"), depot.getDouble("longitude")}
+                            : distanceCalculator.getCoordinates(name);
+                    if (coords == null) {
+                        Log.warn("depot.unresolved", "Pomijam punkt odbioru bez współrzędnych: " + name, "depot", name);
+                        continue;
+                    }
+                    names.add(name);
+                    coordinates.add(coords);
+                }
+            }
+            if (names.isEmpty()) {
+                return defaults();
+            }
+
+            double[] latitudes = new double[names.size()];
+            double[] longitudes = new double[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                latitudes[i] = coordinates.get(i)[0];
+                longitudes[i] = coordinates.get(i)[1];
+            }
+            return new DepotConfig(names, latitudes, longitudes, json.optDouble("costPerKm", DEFAULT_COST_PER_KM));
+        } catch (Exception e) {
+            Log.error("depot.load_failed", "Błąd podczas wczytywania " + CONFIG_FILE + ": " + e.getMessage(),
+                    "file", CONFIG_FILE, "error", e.getMessage());
+            return defaults();
+        }
+    }
+
+    public static DepotConfig defaults() {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_NAME);
+        return new DepotConfig(names, new double[]{DEFAULT_LAT}, new double[]{DEFAULT_LON}, DEFAULT_COST_PER_KM);
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    public double getCostPerKm() {
+        return costPerKm;
+    }
+}
@@ -4,17 +4,42 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DistanceCalculator {
     private static final double EARTH_RADIUS = 6371.0; // Promień Ziemi w kilometrach
-    private static final String NOMINATIM_API = "https://nominatim.openstreetmap.org/search?q=%s&format=json&limit=1";
+    // Adres i odstęp zapytań można nadpisać (-Dnominatim.baseUrl, -Dnominatim.minIntervalMs) np. dla serwera replay
+    private static final String NOMINATIM_API = System.getProperty("nominatim.baseUrl", "https://nominatim.openstreetmap.org")
+            + "/search?q=%s&format=json&limit=1";
+    private static final long MIN_REQUEST_INTERVAL_MS = Long.getLong("nominatim.minIntervalMs", 1100); // Polityka Nominatim: maks. 1 zapytanie na sekundę
+    private static final ExecutorService GEOCODING_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "geocoding");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int MAX_RETRIES = 3; // Próby dla błędów przejściowych (429, 5xx, błędy sieci)
+    private static final long RETRY_BASE_DELAY_MS = 1000;
+    private static long lastRequestTime = 0;
     private final LocationCacheManager cacheManager;
+    private final Gazetteer gazetteer;
 
     public DistanceCalculator(LocationCacheManager cacheManager) {
+        this(cacheManager, Gazetteer.getDefault());
+    }
+
+    public DistanceCalculator(LocationCacheManager cacheManager, Gazetteer gazetteer) {
         this.cacheManager = cacheManager;
+        this.gazetteer = gazetteer;
     }
 
     // Pobiera współrzędne geograficzne dla miasta
@@ -23,55 +48,197 @@ public class DistanceCalculator {
             return null;
         }
 
-        // Sprawdź cache
-        double[] cachedCoords = cacheManager.getCoordinates(city);
+        // Sprawdź cache i słownik miejscowości
+        double[] cachedCoords = lookupLocal(city);
         if (cachedCoords != null) {
             return cachedCoords;
         }
 
-        // Jeśli nie ma w cache’u, pobierz z Nominatim API
+        // Jeśli nie ma w cache’u, pobierz z Nominatim API (jedno zapytanie na miasto, nawet przy równoczesnych chybieniach)
+        return cacheManager.getOrLoad(city, this::fetchCoordinates);
+    }
+
+    // Zwraca współrzędne wyłącznie z cache’a lub słownika miejscowości (bez zapytań sieciowych) – do użycia podczas wyświetlania
+    public double[] getCachedCoordinates(String city) {
+        if (city == null || city.isEmpty()) {
+            return null;
+        }
+        return lookupLocal(city);
+    }
+
+    private double[] lookupLocal(String city) {
+        ScrapeEvents.Geocode event = new ScrapeEvents.Geocode();
+        event.begin();
+        double[] coordinates = cacheManager.getCoordinates(city);
+        if (coordinates == null) {
+            coordinates = gazetteer.lookup(city);
+        }
+        event.city = city;
+        event.source = "local";
+        event.found = coordinates != null;
+        event.commit();
+        return coordinates;
+    }
+
+    // Zbiera unikalne, nieznane lokalizacje i rozwiązuje je jedną partią w tle (limit Nominatim: 1 zapytanie/s)
+    public CompletableFuture<Void> prefetchCoordinates(Collection<String> cities) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String city : cities) {
+            if (city != null && !city.isEmpty() && lookupLocal(city) == null && !cacheManager.isKnownMissing(city)) {
+                missing.add(city);
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Log.info("geocode.prefetch", "Pobieranie współrzędnych dla " + missing.size() + " nowych lokalizacji...",
+                "count", missing.size());
+        return CompletableFuture.runAsync(() -> {
+            for (String city : missing) {
+                cacheManager.getOrLoad(city, this::fetchCoordinates);
+            }
+        }, GEOCODING_EXECUTOR);
+    }
+
+    // Odczekuje tak, aby kolejne zapytania do Nominatim były odległe o co najmniej MIN_REQUEST_INTERVAL_MS
+    private static void throttle() throws InterruptedException {
+        synchronized (DistanceCalculator.class) {
+            long waitMs = lastRequestTime + MIN_REQUEST_INTERVAL_MS - System.currentTimeMillis();
+            if (waitMs > 0) {
+                Thread.sleep(waitMs);
+            }
+            lastRequestTime = System.currentTimeMillis();
+        }
+    }
+
+    // Zwraca współrzędne, null gdy Nominatim nie zna lokalizacji, lub rzuca UncheckedIOException po wyczerpaniu prób
+    private double[] fetchCoordinates(String city) {
+        ScrapeEvents.Geocode event = new ScrapeEvents.Geocode();
+        event.begin();
+        event.city = city;
+        event.source = "nominatim";
         try {
-            String encodedCity = java.net.URLEncoder.encode(city + ", Polska", "UTF-8");
-            URL url = new URL(String.format(NOMINATIM_API, encodedCity));
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "iFlip/1.0 (contact@example.com)");
-
-            int responseCode = conn.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    response.append(inputLine);
+            double[] coordinates = fetchFromNominatim(city);
+            event.found = coordinates != null;
+            return coordinates;
+        } finally {
+            event.commit();
+        }
+    }
+
+    private double[] fetchFromNominatim(String city) {
+        IOException lastError = null;
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            try {
+                if (attempt > 0) {
+                    Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1)); // Wykładnicze opóźnienie: 1 s, 2 s, ...
                 }
-                in.close();
-
-                // Parsowanie JSON
-                JSONArray jsonArray = new JSONArray(response.toString());
-                if (!jsonArray.isEmpty()) {
-                    JSONObject json = jsonArray.getJSONObject(0);
-                    double lat = json.getDouble("lat");
-                    double lon = json.getDouble("lon");
-                    // Zapisz do cache’a
-                    cacheManager.addLocation(city, lat, lon);
-                    return new double[]{lat, lon};
+                throttle();
+                String encodedCity = java.net.URLEncoder.encode(city + ", Polska", "UTF-8");
+                URL url = new URL(String.format(NOMINATIM_API, encodedCity));
+                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                conn.setRequestMethod("GET");
+                conn.setRequestProperty("User-Agent", "iFlip/1.0 (contact@example.com)");
+                conn.setConnectTimeout(10000);
+                conn.setReadTimeout(10000);
+
+                int responseCode = conn.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+                    StringBuilder response = new StringBuilder();
+                    String inputLine;
+                    while ((inputLine = in.readLine()) != null) {
+                        response.append(inputLine);
+                    }
+                    in.close();
+
+                    // Parsowanie JSON
+                    JSONArray jsonArray = new JSONArray(response.toString());
+                    if (!jsonArray.isEmpty()) {
+                        JSONObject json = jsonArray.getJSONObject(0);
+                        double lat = json.getDouble("lat");
+                        double lon = json.getDouble("lon");
+                        return new double[]{lat, lon};
+                    } else {
+                        Log.warn("geocode.not_found", "Brak wyników dla miasta: " + city, "city", city);
+                        return null;
+                    }
+                } else if (responseCode == 429 || responseCode >= 500) {
+                    lastError = new IOException("HTTP " + responseCode);
+                    Log.warn("geocode.retry", "Błąd Nominatim API: HTTP " + responseCode + " dla miasta: " + city + " (próba " + (attempt + 1) + ")",
+                            "city", city, "status", responseCode, "attempt", attempt + 1);
                 } else {
-                    System.err.println("Brak wyników dla miasta: " + city);
-                    return null;
+                    Log.error("geocode.failed", "Błąd Nominatim API: HTTP " + responseCode + " dla miasta: " + city,
+                            "city", city, "status", responseCode);
+                    throw new UncheckedIOException(new IOException("HTTP " + responseCode));
                 }
-            } else {
-                System.err.println("Błąd Nominatim API: HTTP " + responseCode + " dla miasta: " + city);
-                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new IOException("Przerwano pobieranie współrzędnych", e));
+            } catch (IOException e) {
+                lastError = e;
+                Log.warn("geocode.retry", "Błąd pobierania współrzędnych dla miasta " + city + " (próba " + (attempt + 1) + "): " + e.getMessage(),
+                        "city", city, "attempt", attempt + 1, "error", e.getMessage());
             }
-        } catch (Exception e) {
-            System.err.println("Błąd pobierania współrzędnych dla miasta " + city + ": " + e.getMessage());
-            return null;
         }
+        throw new UncheckedIOException(lastError != null ? lastError : new IOException("Nieznany błąd"));
     }
 
     // Oblicza odległość w linii prostej za pomocą wzoru Haversine’a
     public double calculateHaversineDistance(double lat1, double lon1, double lat2, double lon2) {
+        return haversine(lat1, lon1, lat2, lon2);
+    }
+
+    // Dla każdego punktu wyznacza najbliższy punkt odbioru. Punkty zamieniane są raz na wektory jednostkowe 3D,
+    // więc pętla wewnętrzna to sama arytmetyka (długość cięciwy), a trygonometria odbywa się raz na punkt.
+    // nearestIndex[i] == -1 i distance NaN dla punktów o nieznanych współrzędnych.
+    public void nearestOrigins(double[] lats, double[] lons, double[] originLats, double[] originLons,
+                               double[] nearestDistance, int[] nearestIndex) {
+        int m = originLats.length;
+        double[] ox = new double[m];
+        double[] oy = new double[m];
+        double[] oz = new double[m];
+        for (int j = 0; j < m; j++) {
+            double latRad = Math.toRadians(originLats[j]);
+            double lonRad = Math.toRadians(originLons[j]);
+            double cosLat = Math.cos(latRad);
+            ox[j] = cosLat * Math.cos(lonRad);
+            oy[j] = cosLat * Math.sin(lonRad);
+            oz[j] = Math.sin(latRad);
+        }
+
+        for (int i = 0; i < lats.length; i++) {
+            if (Double.isNaN(lats[i]) || Double.isNaN(lons[i]) || m == 0) {
+                nearestDistance[i] = Double.NaN;
+                nearestIndex[i] = -1;
+                continue;
+            }
+            double latRad = Math.toRadians(lats[i]);
+            double lonRad = Math.toRadians(lons[i]);
+            double cosLat = Math.cos(latRad);
+            double x = cosLat * Math.cos(lonRad);
+            double y = cosLat * Math.sin(lonRad);
+            double z = Math.sin(latRad);
+
+            double bestChordSquared = Double.MAX_VALUE;
+            int best = 0;
+            for (int j = 0; j < m; j++) {
+                double dx = x - ox[j];
+                double dy = y - oy[j];
+                double dz = z - oz[j];
+                double chordSquared = dx * dx + dy * dy + dz * dz;
+                if (chordSquared < bestChordSquared) {
+                    bestChordSquared = chordSquared;
+                    best = j;
+                }
+            }
+            nearestDistance[i] = 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(bestChordSquared) / 2));
+            nearestIndex[i] = best;
+        }
+    }
+
+    static double haversine(double lat1, double lon1, double lat2, double lon2) {
         lat1 = Math.toRadians(lat1);
         lon1 = Math.toRadians(lon1);
         lat2 = Math.toRadians(lat2);
@@ -0,0 +1,159 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Offline słownik miejscowości w Polsce: posortowana tablica znormalizowanych nazw + wyszukiwanie binarne.
+// Źródło: plik wskazany przez -Dgazetteer.file, a w jego braku zasób /gazetteer_pl.tsv w classpath (jeśli jest).
+// Obsługiwane formaty wierszy (rozdzielane tabulatorem): "nazwa, szerokość, długość" albo zrzut GeoNames
+// (np. PL.txt z download.geonames.org, licencja CC BY 4.0 – geonameid, name, asciiname, alternatenames, latitude, longitude, ...).
+// Bez źródła słownik jest pusty, a współrzędne pochodzą wyłącznie z cache’a i Nominatim.
+public class Gazetteer {
+    private static final String RESOURCE = "/gazetteer_pl.tsv";
+    private static final String FILE_PROPERTY = "gazetteer.file";
+    private static volatile Gazetteer defaultInstance;
+
+    private final String[] names; // Znormalizowane nazwy, posortowane rosnąco
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    Gazetteer(List<String> rawNames, List<double[]> coordinates) {
+        int n = rawNames.size();
+        Integer[] order = new Integer[n];
+        String[] normalized = new String[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            normalized[i] = normalize(rawNames.get(i));
+        }
+        Arrays.sort(order, (a, b) -> normalized[a].compareTo(normalized[b]));
+
+        // Przy powtarzających się nazwach zostaje pierwszy wpis
+        List<Integer> unique = new ArrayList<>(n);
+        for (int index : order) {
+            if (unique.isEmpty() || !normalized[unique.get(unique.size() - 1)].equals(normalized[index])) {
+                unique.add(index);
+            }
+        }
+
+        names = new String[unique.size()];
+        latitudes = new double[unique.size()];
+        longitudes = new double[unique.size()];
+        for (int i = 0; i < unique.size(); i++) {
+            int index = unique.get(i);
+            names[i] = normalized[index];
+            latitudes[i] = coordinates.get(index)[0];
+            longitudes[i] = coordinates.get(index)[1];
+        }
+    }
+
+    // Zwraca słownik wczytany z zasobu w classpath (pusty, jeśli zasobu brak)
+    public static Gazetteer getDefault() {
+        if (defaultInstance == null) {
+            synchronized (Gazetteer.class) {
+                if (defaultInstance == null) {
+                    defaultInstance = load();
+                }
+            }
+        }
+        return defaultInstance;
+    }
+
+    private static Gazetteer load() {
+        String file = System.getProperty(FILE_PROPERTY);
+        try (InputStream stream = file != null ? new FileInputStream(file) : Gazetteer.class.getResourceAsStream(RESOURCE)) {
+            if (stream == null) {
+                Log.debug("gazetteer.missing", "Brak słownika miejscowości (-D" + FILE_PROPERTY + " ani zasobu " + RESOURCE + ")");
+                return new Gazetteer(new ArrayList<>(), new ArrayList<>());
+            }
+            Gazetteer gazetteer = read(stream);
+            Log.info("gazetteer.loaded", "Wczytano słownik miejscowości: " + gazetteer.size() + " nazw",
+                    "source", file != null ? file : RESOURCE, "names", gazetteer.size());
+            return gazetteer;
+        } catch (IOException | RuntimeException e) {
+            Log.error("gazetteer.load_failed", "Błąd podczas ładowania słownika miejscowości: " + e.getMessage(),
+                    "source", file != null ? file : RESOURCE, "error", e.getMessage());
+            return new Gazetteer(new ArrayList<>(), new ArrayList<>());
+        }
+    }
+
+    // Wiersze "nazwa, szerokość, długość" (tabulatory) lub wiersze zrzutu GeoNames; komentarze (#) i wiersze niepełne są pomijane
+    static Gazetteer read(InputStream stream) throws IOException {
+        List<String> rawNames = new ArrayList<>();
+        List<double[]> coordinates = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t", -1);
+            boolean geonames = parts.length >= 6;
+            if (!geonames && parts.length < 3) {
+                continue;
+            }
+            try {
+                double latitude = Double.parseDouble(parts[geonames ? 4 : 1]);
+                double longitude = Double.parseDouble(parts[geonames ? 5 : 2]);
+                rawNames.add(parts[geonames ? 1 : 0]);
+                coordinates.add(new double[]{latitude, longitude});
+            } catch (NumberFormatException e) {
+                // Wiersz nagłówka lub uszkodzony – pomijamy
+            }
+        }
+        return new Gazetteer(rawNames, coordinates);
+    }
+
+    // Małe litery, bez polskich znaków diakrytycznych, myślniki i wielokrotne spacje zamienione na jedną spację
+    static String normalize(String name) {
+        String lower = name.trim().toLowerCase().replace('ł', 'l');
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        boolean lastSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == '-' || Character.isWhitespace(c)) {
+                if (!lastSpace && result.length() > 0) {
+                    result.append(' ');
+                }
+                lastSpace = true;
+            } else {
+                result.append(c);
+                lastSpace = false;
+            }
+        }
+        int length = result.length();
+        if (length > 0 && result.charAt(length - 1) == ' ') {
+            result.setLength(length - 1);
+        }
+        return result.toString();
+    }
+
+    // Zwraca {szerokość, długość} lub null, jeśli miejscowości nie ma w słowniku.
+    // Lokalizacja OLX w postaci "Kraków, Podgórze" szukana jest także po samej nazwie miasta.
+    public double[] lookup(String city) {
+        if (city == null || city.isEmpty() || names.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(names, normalize(city));
+        int comma = city.indexOf(',');
+        if (index < 0 && comma > 0) {
+            index = Arrays.binarySearch(names, normalize(city.substring(0, comma)));
+        }
+        return index >= 0 ? new double[]{latitudes[index], longitudes[index]} : null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+}
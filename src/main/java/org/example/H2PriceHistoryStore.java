@@ -0,0 +1,184 @@
+package org.example;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Historia w osadzonej bazie H2 (plik <ścieżka>.mv.db): dopisanie to wsadowy INSERT w jednej transakcji,
+// a zapytania okienkowe (trend z 30 dni) to zakres na indeksie złożonym (model, pojemność, pakiet ochronny, data).
+// Klucze model_key i storage_key przechowywane małymi literami, bo dotychczasowe porównania ignorowały wielkość liter.
+public class H2PriceHistoryStore implements PriceHistoryStore {
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final LocalDate MIN_DATE = LocalDate.of(1970, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS price_history ("
+            + "sale_day DATE NOT NULL, price DOUBLE PRECISION NOT NULL, model VARCHAR(64) NOT NULL, "
+            + "storage VARCHAR(16) NOT NULL, protection BOOLEAN NOT NULL, "
+            + "model_key VARCHAR(64) NOT NULL, storage_key VARCHAR(16) NOT NULL)";
+    private static final String CREATE_INDEX = "CREATE INDEX IF NOT EXISTS price_history_lookup "
+            + "ON price_history(model_key, storage_key, protection, sale_day)";
+    private static final String INSERT = "INSERT INTO price_history "
+            + "(sale_day, price, model, storage, protection, model_key, storage_key) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_WINDOW = "SELECT sale_day, price, model, storage, protection FROM price_history "
+            + "WHERE model_key = ? AND storage_key = ? AND protection = ? AND sale_day BETWEEN ? AND ? ORDER BY sale_day";
+    private static final String SELECT_ALL = "SELECT sale_day, price, model, storage, protection FROM price_history";
+    private static final String COUNT = "SELECT COUNT(*) FROM price_history";
+
+    private final String path;
+    private final Connection connection;
+
+    public H2PriceHistoryStore(String path) throws SQLException {
+        this.path = new File(path).getAbsolutePath();
+        this.connection = DriverManager.getConnection("jdbc:h2:file:" + this.path, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            statement.execute(CREATE_INDEX);
+        }
+    }
+
+    @Override
+    public synchronized void append(List<PriceHistoryManager.PriceRecord> records) {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                int pending = 0;
+                for (PriceHistoryManager.PriceRecord record : records) {
+                    insert.setObject(1, record.getDate());
+                    insert.setDouble(2, record.getPrice());
+                    insert.setString(3, record.getModel());
+                    insert.setString(4, record.getStorageCapacity());
+                    insert.setBoolean(5, record.hasProtectionPackage());
+                    insert.setString(6, key(record.getModel()));
+                    insert.setString(7, key(record.getStorageCapacity()));
+                    insert.addBatch();
+                    if (++pending == INSERT_BATCH_SIZE) {
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    insert.executeBatch();
+                }
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            rollback();
+            Log.error("history.db_write_failed", "Błąd podczas zapisu do bazy historii: " + e.getMessage(),
+                    "path", path, "records", records.size(), "error", e.getMessage());
+        } finally {
+            restoreAutoCommit();
+        }
+        Metrics.recordNanos("history_write_seconds", "Czas zapisu historii cen (odczyt, dopisanie i zapis pliku)", System.nanoTime() - start);
+        event.operation = "save";
+        event.file = path;
+        event.records = records.size();
+        event.commit();
+    }
+
+    @Override
+    public synchronized List<PriceHistoryManager.PriceRecord> find(String model, String storageCapacity, boolean hasProtectionPackage,
+                                                                   LocalDate from, LocalDate to) {
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_WINDOW)) {
+            select.setString(1, key(model));
+            select.setString(2, key(storageCapacity));
+            select.setBoolean(3, hasProtectionPackage);
+            select.setObject(4, from != null ? from : MIN_DATE);
+            select.setObject(5, to != null ? to : MAX_DATE);
+            read(select, records, "find");
+        } catch (SQLException e) {
+            Log.error("history.db_read_failed", "Błąd podczas odczytu bazy historii: " + e.getMessage(),
+                    "path", path, "query", "find", "model", model, "storage", storageCapacity, "error", e.getMessage());
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized List<PriceHistoryManager.PriceRecord> findAll() {
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_ALL)) {
+            read(select, records, "read");
+        } catch (SQLException e) {
+            Log.error("history.db_read_failed", "Błąd podczas odczytu bazy historii: " + e.getMessage(),
+                    "path", path, "query", "read", "error", e.getMessage());
+        }
+        return records;
+    }
+
+    private void read(PreparedStatement select, List<PriceHistoryManager.PriceRecord> records, String operation) throws SQLException {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                records.add(new PriceHistoryManager.PriceRecord(rows.getObject(1, LocalDate.class), rows.getDouble(2),
+                        rows.getString(3), rows.getString(4), rows.getBoolean(5)));
+            }
+        }
+        Metrics.recordNanos("history_read_seconds", "Czas odczytu i parsowania pliku historii cen", System.nanoTime() - start);
+        event.operation = operation;
+        event.file = path;
+        event.records = records.size();
+        event.commit();
+    }
+
+    @Override
+    public synchronized long count() {
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(COUNT)) {
+            return rows.next() ? rows.getLong(1) : 0;
+        } catch (SQLException e) {
+            Log.error("history.db_read_failed", "Błąd podczas odczytu bazy historii: " + e.getMessage(),
+                    "path", path, "query", "count", "error", e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return path + ".mv.db";
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Log.warn("history.db_close_failed", "Błąd podczas zamykania bazy historii: " + e.getMessage(),
+                    "path", path, "error", e.getMessage());
+        }
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            Log.error("history.db_rollback_failed", "Błąd podczas wycofywania zapisu historii: " + e.getMessage(),
+                    "path", path, "error", e.getMessage());
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            Log.error("history.db_write_failed", "Błąd podczas zapisu do bazy historii: " + e.getMessage(),
+                    "path", path, "error", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.example;
+
+import java.io.File;
+import java.time.YearMonth;
+import java.util.List;
+
+// Jednorazowe przeniesienie historii z pliku JSON do bazy H2 albo do katalogu partycji miesięcznych
+// (--migrate-history [plik.json] [cel]; katalog partycji przy -Dhistory.store=partitioned).
+// Rekordy zapisywane są partiami (w H2 każda w osobnej transakcji); na końcu liczba rekordów w magazynie
+// jest porównywana ze źródłem. Magazyn docelowy musi być pusty, aby ponowne uruchomienie nie zdublowało historii.
+public final class HistoryMigration {
+    private static final int CHUNK_SIZE = 10_000;
+
+    private HistoryMigration() {
+    }
+
+    // Kod wyjścia: 0 – sukces, 1 – niezgodna liczba rekordów lub błąd magazynu, 2 – błędne argumenty lub niepusty magazyn
+    public static int run(String[] args) {
+        if (args.length > 2) {
+            System.err.println("Użycie: java [-Dhistory.store=partitioned] -jar olx-scraper.jar --migrate-history [price_history.json] [price_history]");
+            return 2;
+        }
+        String sourceFile = args.length > 0 ? args[0] : "price_history.json";
+        boolean partitioned = System.getProperty("history.store", "h2").equalsIgnoreCase("partitioned");
+        String targetPath = args.length > 1 ? args[1]
+                : System.getProperty(partitioned ? "history.dir" : "history.db", "price_history");
+
+        PriceHistoryStore source = new JsonPriceHistoryStore(sourceFile);
+        PriceHistoryStore target;
+        try {
+            target = partitioned ? new PartitionedPriceHistoryStore(new File(targetPath)) : PriceHistoryManager.openH2(targetPath);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        try {
+            long existing = target.count();
+            if (existing > 0) {
+                System.err.println("Magazyn " + target.describe() + " zawiera już " + existing + " rekordów – migracja przerwana.");
+                return 2;
+            }
+
+            long start = System.nanoTime();
+            List<PriceHistoryManager.PriceRecord> records = source.findAll();
+            for (int from = 0; from < records.size(); from += CHUNK_SIZE) {
+                int to = Math.min(from + CHUNK_SIZE, records.size());
+                target.append(records.subList(from, to));
+                System.out.printf("Przeniesiono %d z %d rekordów\n", to, records.size());
+            }
+
+            long migrated = target.count();
+            if (migrated != records.size()) {
+                System.err.printf("Niezgodna liczba rekordów: plik %d, magazyn %d\n", records.size(), migrated);
+                return 1;
+            }
+            if (target instanceof PartitionedPriceHistoryStore) {
+                // Stare miesiące od razu kompresowane/próbkowane według polityki przechowywania
+                ((PartitionedPriceHistoryStore) target).applyRetention(YearMonth.now());
+            }
+            System.out.printf("Migracja zakończona: %d rekordów z %s do %s w %d ms\n", migrated, sourceFile, target.describe(),
+                    (System.nanoTime() - start) / 1_000_000);
+            System.out.println("Aby korzystać z nowego magazynu, uruchamiaj program z -Dhistory.store=" + (partitioned ? "partitioned" : "h2")
+                    + (args.length > 1 ? (partitioned ? " -Dhistory.dir=" : " -Dhistory.db=") + targetPath : ""));
+            return 0;
+        } finally {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Historia w jednym pliku JSON: dopisanie przepisuje cały plik, a każde zapytanie czyta i filtruje wszystkie rekordy
+public class JsonPriceHistoryStore implements PriceHistoryStore {
+    private final String historyFile;
+
+    public JsonPriceHistoryStore(String historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    @Override
+    public void append(List<PriceHistoryManager.PriceRecord> records) {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        JSONArray jsonArray;
+        File file = new File(historyFile);
+
+        if (file.exists()) {
+            jsonArray = readJsonArray();
+        } else {
+            jsonArray = new JSONArray();
+        }
+
+        for (PriceHistoryManager.PriceRecord record : records) {
+            jsonArray.put(record.toJSON());
+        }
+
+        try (FileWriter fileWriter = new FileWriter(historyFile)) {
+            fileWriter.write(jsonArray.toString(2));
+        } catch (IOException e) {
+            System.err.println("Błąd podczas zapisu do pliku JSON: " + e.getMessage());
+        }
+        Metrics.recordNanos("history_write_seconds", "Czas zapisu historii cen (odczyt, dopisanie i zapis pliku)", System.nanoTime() - start);
+        event.operation = "save";
+        event.file = historyFile;
+        event.records = records.size();
+        event.commit();
+    }
+
+    private JSONArray readJsonArray() {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        JSONArray jsonArray;
+        try (FileReader fileReader = new FileReader(historyFile)) {
+            StringBuilder content = new StringBuilder();
+            int c;
+            while ((c = fileReader.read()) != -1) {
+                content.append((char) c);
+            }
+            jsonArray = content.length() > 0 ? new JSONArray(content.toString()) : new JSONArray();
+        } catch (IOException e) {
+            System.err.println("Błąd podczas odczytu pliku JSON: " + e.getMessage());
+            jsonArray = new JSONArray();
+        }
+        Metrics.recordNanos("history_read_seconds", "Czas odczytu i parsowania pliku historii cen", System.nanoTime() - start);
+        event.operation = "read";
+        event.file = historyFile;
+        event.records = jsonArray.length();
+        event.commit();
+        return jsonArray;
+    }
+
+    @Override
+    public List<PriceHistoryManager.PriceRecord> find(String model, String storageCapacity, boolean hasProtectionPackage,
+                                                      LocalDate from, LocalDate to) {
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        JSONArray jsonArray = readJsonArray();
+
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject json = jsonArray.getJSONObject(i);
+            if (json.getString("model").equalsIgnoreCase(model) &&
+                    json.getString("storageCapacity").equalsIgnoreCase(storageCapacity) &&
+                    json.getBoolean("hasProtectionPackage") == hasProtectionPackage) {
+                PriceHistoryManager.PriceRecord record = PriceHistoryManager.PriceRecord.fromJSON(json);
+                if ((from == null || !record.getDate().isBefore(from)) && (to == null || !record.getDate().isAfter(to))) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public List<PriceHistoryManager.PriceRecord> findAll() {
+        JSONArray jsonArray = readJsonArray();
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>(jsonArray.length());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            records.add(PriceHistoryManager.PriceRecord.fromJSON(jsonArray.getJSONObject(i)));
+        }
+        return records;
+    }
+
+    @Override
+    public long count() {
+        return new File(historyFile).exists() ? readJsonArray().length() : 0;
+    }
+
+    @Override
+    public String describe() {
+        return historyFile;
+    }
+}
@@ -3,48 +3,183 @@ package org.example;
 import org.json.JSONObject;
 
 import java.io.*;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
-public class LocationCacheManager {
-    private static final String CACHE_FILE = "location_cache.json";
+public class LocationCacheManager implements AutoCloseable {
+    private static final String CACHE_FILE_NAME = "location_cache.json";
+    private static final String APPEND_LOG_FILE_NAME = "location_cache.log"; // Dziennik nowych wpisów (JSON lines)
+    private static final long FLUSH_INTERVAL_SECONDS = 5; // Co ile sekund zapisywane są nowe wpisy
+    private static final int COMPACT_THRESHOLD = 200; // Po tylu wpisach w dzienniku zapisujemy pełny plik cache’a
+    private static final String NEGATIVE_CACHE_FILE_NAME = "location_cache_negative.json"; // Lokalizacje bez wyniku: miasto -> termin ważności
+    private static final long NOT_FOUND_TTL_MS = TimeUnit.DAYS.toMillis(30); // Nominatim nie zna lokalizacji
+    private static final long ERROR_TTL_MS = TimeUnit.HOURS.toMillis(1); // Błąd sieci/serwera po wszystkich próbach
+    private static final int MAX_NEGATIVE_ENTRIES = 2000; // Limit wpisów negatywnych (usuwane najdawniej używane)
+
+    private final File cacheFile;
+    private final File appendLogFile;
+    private final File negativeCacheFile;
     private final Map<String, double[]> locationCache;
+    private final LinkedHashMap<String, Long> negativeCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_NEGATIVE_ENTRIES;
+        }
+    };
+    private final Stats stats = new Stats();
+    private final Map<String, CompletableFuture<double[]>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> dirtyCities = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+    private Thread shutdownHook;
+    private int appendLogEntries;
+    private boolean closed;
+
+    public static LocationCacheManager open() {
+        return open(new File("."));
+    }
 
-    public LocationCacheManager() {
+    // Pliki cache’a w podanym katalogu (np. katalog tymczasowy w benchmarkach)
+    public static LocationCacheManager open(File directory) {
+        LocationCacheManager manager = new LocationCacheManager(directory);
+        manager.start();
+        return manager;
+    }
+
+    private LocationCacheManager(File directory) {
+        cacheFile = new File(directory, CACHE_FILE_NAME);
+        appendLogFile = new File(directory, APPEND_LOG_FILE_NAME);
+        negativeCacheFile = new File(directory, NEGATIVE_CACHE_FILE_NAME);
         locationCache = loadCache();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "location-cache-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    // Ładuje cache z pliku JSON
+    // Okresowy zapis i hook zamknięcia uruchamiane dopiero po pełnej konstrukcji obiektu
+    private void start() {
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        shutdownHook = new Thread(this::close, "location-cache-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Ładuje cache z pliku JSON i odtwarza wpisy z dziennika
     private Map<String, double[]> loadCache() {
-        Map<String, double[]> cache = new HashMap<>();
-        File file = new File(CACHE_FILE);
-        if (!file.exists()) {
-            return cache;
+        Map<String, double[]> cache = new ConcurrentHashMap<>();
+        File file = cacheFile;
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+                StringBuilder jsonContent = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    jsonContent.append(line);
+                }
+
+                if (jsonContent.length() > 0) {
+                    JSONObject json = new JSONObject(jsonContent.toString());
+                    for (String city : json.keySet()) {
+                        JSONObject coords = json.getJSONObject(city);
+                        double latitude = coords.getDouble("latitude");
+                        double longitude = coords.getDouble("longitude");
+                        cache.put(city, new double[]{latitude, longitude});
+                    }
+                }
+            } catch (Exception e) {
+                Log.error("location_cache.load_failed", "Błąd podczas ładowania cache’a lokalizacji: " + e.getMessage(),
+                        "file", cacheFile.getPath(), "error", e.getMessage());
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        loadNegativeCache(cache);
+
+        File logFile = appendLogFile;
+        if (logFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(logFile, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        JSONObject entry = new JSONObject(line);
+                        String city = entry.getString("city");
+                        if (entry.has("expiresAt")) {
+                            putNegative(city, entry.getLong("expiresAt"));
+                        } else {
+                            cache.put(city, new double[]{entry.getDouble("latitude"), entry.getDouble("longitude")});
+                            removeNegative(city);
+                        }
+                        appendLogEntries++;
+                    } catch (Exception e) {
+                        // Niekompletna ostatnia linia (np. po przerwaniu zapisu) – pomijamy
+                    }
+                }
+            } catch (IOException e) {
+                Log.error("location_cache.log_read_failed", "Błąd podczas odczytu dziennika cache’a lokalizacji: " + e.getMessage(),
+                        "file", appendLogFile.getPath(), "error", e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    private void loadNegativeCache(Map<String, double[]> cache) {
+        File file = negativeCacheFile;
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
             StringBuilder jsonContent = new StringBuilder();
             String line;
             while ((line = reader.readLine()) != null) {
                 jsonContent.append(line);
             }
-
             if (jsonContent.length() > 0) {
                 JSONObject json = new JSONObject(jsonContent.toString());
+                long now = System.currentTimeMillis();
                 for (String city : json.keySet()) {
-                    JSONObject coords = json.getJSONObject(city);
-                    double latitude = coords.getDouble("latitude");
-                    double longitude = coords.getDouble("longitude");
-                    cache.put(city, new double[]{latitude, longitude});
+                    long expiresAt = json.getLong(city);
+                    if (expiresAt > now && !cache.containsKey(city)) {
+                        putNegative(city, expiresAt);
+                    }
                 }
             }
         } catch (Exception e) {
-            System.err.println("Błąd podczas ładowania cache’a lokalizacji: " + e.getMessage());
+            Log.warn("location_cache.negative_load_failed", "Błąd podczas ładowania negatywnego cache’a lokalizacji: " + e.getMessage(),
+                    "file", negativeCacheFile.getPath(), "error", e.getMessage());
         }
-        return cache;
     }
 
-    // Zapisuje cache do pliku JSON
+    private void saveNegativeCache() {
+        JSONObject json = new JSONObject();
+        long now = System.currentTimeMillis();
+        synchronized (negativeCache) {
+            for (Map.Entry<String, Long> entry : negativeCache.entrySet()) {
+                if (entry.getValue() > now) {
+                    json.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(negativeCacheFile, StandardCharsets.UTF_8))) {
+            writer.write(json.toString(2));
+        } catch (IOException e) {
+            Log.warn("location_cache.negative_save_failed", "Błąd podczas zapisywania negatywnego cache’a lokalizacji: " + e.getMessage(),
+                    "file", negativeCacheFile.getPath(), "error", e.getMessage());
+        }
+    }
+
+    // Zapisuje cały cache do pliku JSON i czyści dziennik
     private void saveCache() {
         JSONObject json = new JSONObject();
         for (Map.Entry<String, double[]> entry : locationCache.entrySet()) {
@@ -54,23 +189,241 @@ public class LocationCacheManager {
             json.put(entry.getKey(), coords);
         }
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(CACHE_FILE))) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(cacheFile, StandardCharsets.UTF_8))) {
             writer.write(json.toString(2)); // Format JSON z wcięciami
         } catch (IOException e) {
-            System.err.println("Błąd podczas zapisywania cache’a lokalizacji: " + e.getMessage());
+            Log.error("location_cache.save_failed", "Błąd podczas zapisywania cache’a lokalizacji: " + e.getMessage(),
+                    "file", cacheFile.getPath(), "error", e.getMessage());
+            return;
+        }
+        saveNegativeCache();
+
+        if (!appendLogFile.delete() && appendLogFile.exists()) {
+            Log.warn("location_cache.log_cleanup_failed", "Nie udało się wyczyścić dziennika cache’a lokalizacji.",
+                    "file", appendLogFile.getPath());
+        }
+        appendLogEntries = 0;
+    }
+
+    // Dopisuje zmienione wpisy do dziennika; po przekroczeniu progu kompaktuje do pełnego pliku
+    public synchronized void flush() {
+        List<String> batch = new ArrayList<>();
+        String city;
+        while ((city = dirtyCities.poll()) != null) {
+            batch.add(city);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (appendLogEntries + batch.size() >= COMPACT_THRESHOLD) {
+            saveCache();
+            return;
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(appendLogFile, StandardCharsets.UTF_8, true))) {
+            for (String dirtyCity : batch) {
+                double[] coords = locationCache.get(dirtyCity);
+                Long expiresAt = getNegativeExpiry(dirtyCity);
+                if (coords == null && expiresAt == null) {
+                    continue;
+                }
+                JSONObject entry = new JSONObject();
+                entry.put("city", dirtyCity);
+                if (coords != null) {
+                    entry.put("latitude", coords[0]);
+                    entry.put("longitude", coords[1]);
+                } else {
+                    entry.put("expiresAt", expiresAt.longValue());
+                }
+                writer.write(entry.toString());
+                writer.newLine();
+                appendLogEntries++;
+            }
+        } catch (IOException e) {
+            Log.error("location_cache.log_write_failed", "Błąd podczas zapisu dziennika cache’a lokalizacji: " + e.getMessage(),
+                    "file", appendLogFile.getPath(), "entries", batch.size(), "error", e.getMessage());
+            dirtyCities.addAll(batch); // Spróbujemy ponownie przy następnym zapisie
         }
     }
 
     // Pobiera współrzędne z cache’a
     public double[] getCoordinates(String city) {
-        return locationCache.get(city);
+        double[] coordinates = city != null ? locationCache.get(city) : null;
+        if (coordinates != null) {
+            stats.hits.incrementAndGet();
+            Metrics.increment("geocode_cache_hits_total", "Trafienia w cache’u współrzędnych");
+        }
+        return coordinates;
     }
 
-    // Dodaje miasto i jego współrzędne do cache’a
+    // Czy lokalizacja jest zapamiętana jako nieznana (wpis negatywny, który jeszcze nie wygasł)
+    public boolean isKnownMissing(String city) {
+        return city != null && getNegativeExpiry(city) != null;
+    }
+
+    private Long getNegativeExpiry(String city) {
+        synchronized (negativeCache) {
+            Long expiresAt = negativeCache.get(city);
+            if (expiresAt != null && expiresAt <= System.currentTimeMillis()) {
+                negativeCache.remove(city);
+                return null;
+            }
+            return expiresAt;
+        }
+    }
+
+    private void putNegative(String city, long expiresAt) {
+        synchronized (negativeCache) {
+            negativeCache.put(city, expiresAt);
+        }
+    }
+
+    private void removeNegative(String city) {
+        synchronized (negativeCache) {
+            negativeCache.remove(city);
+        }
+    }
+
+    // Zapamiętuje brak wyniku dla lokalizacji na podany czas
+    private void addMissing(String city, long ttlMs) {
+        putNegative(city, System.currentTimeMillis() + ttlMs);
+        dirtyCities.add(city);
+    }
+
+    // Dodaje miasto i jego współrzędne do cache’a (zapis na dysk odbywa się asynchronicznie)
     public void addLocation(String city, double latitude, double longitude) {
         if (city != null && !city.isEmpty()) {
             locationCache.put(city, new double[]{latitude, longitude});
+            removeNegative(city);
+            dirtyCities.add(city);
+        }
+    }
+
+    // Zwraca współrzędne z cache’a lub ładuje je; równoczesne chybienia dla tego samego miasta wykonują jedno zapytanie.
+    // Loader zwraca null, gdy lokalizacja nie istnieje, a rzuca UncheckedIOException przy błędzie przejściowym –
+    // oba przypadki są zapamiętywane jako wpisy negatywne (z różnym czasem ważności).
+    public double[] getOrLoad(String city, Function<String, double[]> loader) {
+        if (city == null || city.isEmpty()) {
+            return null;
+        }
+        double[] cached = locationCache.get(city);
+        if (cached != null) {
+            stats.hits.incrementAndGet();
+            Metrics.increment("geocode_cache_hits_total", "Trafienia w cache’u współrzędnych");
+            return cached;
+        }
+        if (isKnownMissing(city)) {
+            stats.negativeHits.incrementAndGet();
+            Metrics.increment("geocode_cache_negative_hits_total", "Trafienia we wpisach negatywnych (lokalizacja nieznana)");
+            return null;
+        }
+
+        CompletableFuture<double[]> future = new CompletableFuture<>();
+        CompletableFuture<double[]> existing = inFlight.putIfAbsent(city, future);
+        if (existing != null) {
+            return existing.join();
+        }
+
+        try {
+            double[] coordinates = locationCache.get(city);
+            if (coordinates == null) {
+                stats.misses.incrementAndGet();
+                Metrics.increment("geocode_cache_misses_total", "Chybienia cache’u współrzędnych (zapytanie do Nominatim)");
+                long start = System.nanoTime();
+                try {
+                    coordinates = loader.apply(city);
+                } catch (UncheckedIOException e) {
+                    stats.failures.incrementAndGet();
+                    Metrics.increment("geocode_failures_total", "Nieudane geokodowania (błędy przejściowe)");
+                    addMissing(city, ERROR_TTL_MS);
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    stats.loadNanos.addAndGet(elapsed);
+                    Metrics.recordNanos("geocode_load_seconds", "Czas geokodowania chybionej lokalizacji", elapsed);
+                }
+                if (coordinates != null) {
+                    addLocation(city, coordinates[0], coordinates[1]);
+                } else if (!isKnownMissing(city)) {
+                    addMissing(city, NOT_FOUND_TTL_MS);
+                }
+            }
+            future.complete(coordinates);
+            return coordinates;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(city, future);
+        }
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    // Liczniki skuteczności cache’a (trafienia, chybienia, trafienia negatywne, czas zapytań sieciowych)
+    public static class Stats {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong negativeHits = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong loadNanos = new AtomicLong();
+
+        public long getHits() {
+            return hits.get();
+        }
+
+        public long getMisses() {
+            return misses.get();
+        }
+
+        public long getNegativeHits() {
+            return negativeHits.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public double getAverageLoadMillis() {
+            long loads = misses.get();
+            return loads == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / loads;
+        }
+
+        // Szacowany czas sieci zaoszczędzony dzięki trafieniom (dodatnim i negatywnym)
+        public double getEstimatedSavedMillis() {
+            return (hits.get() + negativeHits.get()) * getAverageLoadMillis();
+        }
+
+        @Override
+        public String toString() {
+            long total = hits.get() + misses.get() + negativeHits.get();
+            return String.format("trafienia: %d, chybienia: %d, trafienia negatywne: %d, błędy: %d, skuteczność: %.1f%%, " +
+                            "średni czas zapytania: %.0f ms, zaoszczędzony czas: ~%.1f s",
+                    hits.get(), misses.get(), negativeHits.get(), failures.get(),
+                    total == 0 ? 0.0 : (hits.get() + negativeHits.get()) * 100.0 / total,
+                    getAverageLoadMillis(), getEstimatedSavedMillis() / 1000.0);
+        }
+    }
+
+    // Zapisuje pełny cache i zatrzymuje wątek zapisu
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flusher.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Zamykanie z wnętrza hooka (JVM już się wyłącza)
+        }
+        boolean hasPendingEntries = !dirtyCities.isEmpty();
+        dirtyCities.clear();
+        if (hasPendingEntries || appendLogEntries > 0) {
             saveCache();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Asynchroniczny dziennik strukturalny: wątki robocze tylko wstawiają wpis do bufora pierścieniowego,
+// a jeden wątek zapisuje go jako linię JSON do olx_scraper.log i (od poziomu log.console) na konsolę.
+// Poziomy: -Dlog.level (plik, domyślnie DEBUG), -Dlog.console (konsola, domyślnie INFO).
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final String LOG_FILE = "olx_scraper.log";
+    private static final int BUFFER_CAPACITY = 8192; // Przy pełnym buforze wpisy są odrzucane (i zliczane), a nie blokują wątków
+    private static final Level FILE_LEVEL = parseLevel(System.getProperty("log.level"), Level.DEBUG);
+    private static final Level CONSOLE_LEVEL = parseLevel(System.getProperty("log.console"), Level.INFO);
+    private static final long FLUSH_TIMEOUT_SECONDS = 5;
+    private static final int MIN_LEVEL = Math.min(FILE_LEVEL.ordinal(), CONSOLE_LEVEL.ordinal());
+
+    private static final ArrayBlockingQueue<Entry> BUFFER = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Map<String, AtomicLong> SAMPLE_COUNTS = new ConcurrentHashMap<>();
+    private static volatile boolean consoleToStderr; // Tryb wsadowy: standardowe wyjście zarezerwowane dla wyników
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Log() {
+    }
+
+    private static class Entry {
+        private final long timestamp;
+        private final Level level;
+        private final String thread;
+        private final String event;
+        private final String message;
+        private final Object[] fields;
+        private final CountDownLatch flushed;
+
+        private Entry(Level level, String event, String message, Object[] fields, CountDownLatch flushed) {
+            this.timestamp = System.currentTimeMillis();
+            this.level = level;
+            this.thread = Thread.currentThread().getName();
+            this.event = event;
+            this.message = message;
+            this.fields = fields;
+            this.flushed = flushed;
+        }
+    }
+
+    // fields: pary klucz, wartość (np. "page", 3, "url", url)
+    public static void debug(String event, String message, Object... fields) {
+        log(Level.DEBUG, event, message, fields);
+    }
+
+    public static void info(String event, String message, Object... fields) {
+        log(Level.INFO, event, message, fields);
+    }
+
+    public static void warn(String event, String message, Object... fields) {
+        log(Level.WARN, event, message, fields);
+    }
+
+    public static void error(String event, String message, Object... fields) {
+        log(Level.ERROR, event, message, fields);
+    }
+
+    // Dla komunikatów powtarzanych dla każdej oferty: zapisuje pierwsze i co every-te wystąpienie
+    // (z łączną liczbą w polu "occurrences"), pozostałe tylko zlicza
+    public static void sampled(Level level, String event, int every, String message, Object... fields) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long occurrences = SAMPLE_COUNTS.computeIfAbsent(event, key -> new AtomicLong()).incrementAndGet();
+        if (occurrences % every != 1 && every > 1) {
+            return;
+        }
+        Object[] sampledFields = new Object[fields.length + 2];
+        System.arraycopy(fields, 0, sampledFields, 0, fields.length);
+        sampledFields[fields.length] = "occurrences";
+        sampledFields[fields.length + 1] = occurrences;
+        log(level, event, message, sampledFields);
+    }
+
+    // Wszystkie komunikaty konsolowe na standardowe wyjście błędów
+    public static void useStderrForConsole() {
+        consoleToStderr = true;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= MIN_LEVEL;
+    }
+
+    private static void log(Level level, String event, String message, Object[] fields) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        if (!BUFFER.offer(new Entry(level, event, message, fields, null))) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    // Czeka, aż wszystkie wcześniejsze wpisy zostaną zapisane (np. przed zakończeniem programu)
+    public static void flush() {
+        CountDownLatch flushed = new CountDownLatch(1);
+        try {
+            BUFFER.put(new Entry(Level.DEBUG, "", "", new Object[0], flushed));
+            flushed.await(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS); // Nie blokujemy zamykania, jeśli zapis się nie powiódł
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(LOG_FILE, StandardCharsets.UTF_8, true))) {
+            while (true) {
+                batch.add(BUFFER.take());
+                BUFFER.drainTo(batch);
+                long dropped = DROPPED.getAndSet(0);
+                if (dropped > 0) {
+                    write(writer, new Entry(Level.WARN, "log.dropped", "Odrzucono wpisy dziennika (pełny bufor)",
+                            new Object[]{"count", dropped}, null));
+                }
+                for (Entry entry : batch) {
+                    if (entry.flushed != null) {
+                        writer.flush();
+                        System.out.flush();
+                        entry.flushed.countDown();
+                    } else {
+                        write(writer, entry);
+                    }
+                }
+                writer.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Błąd zapisu dziennika " + LOG_FILE + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(BufferedWriter writer, Entry entry) throws IOException {
+        if (entry.level.ordinal() >= FILE_LEVEL.ordinal()) {
+            JSONObject json = new JSONObject();
+            json.put("ts", Instant.ofEpochMilli(entry.timestamp).toString());
+            json.put("level", entry.level.name());
+            json.put("thread", entry.thread);
+            json.put("event", entry.event);
+            json.put("msg", entry.message);
+            for (int i = 0; i + 1 < entry.fields.length; i += 2) {
+                json.put(String.valueOf(entry.fields[i]), entry.fields[i + 1] != null ? entry.fields[i + 1] : JSONObject.NULL);
+            }
+            writer.write(json.toString());
+            writer.newLine();
+        }
+        if (entry.level.ordinal() >= CONSOLE_LEVEL.ordinal()) {
+            (consoleToStderr || entry.level.ordinal() >= Level.WARN.ordinal() ? System.err : System.out).println(entry.message);
+        }
+    }
+
+    private static Level parseLevel(String value, Level defaultLevel) {
+        if (value == null) {
+            return defaultLevel;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultLevel;
+        }
+    }
+}
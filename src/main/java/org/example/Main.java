@@ -1,10 +1,17 @@
 package org.example;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class Main {
@@ -49,6 +56,19 @@ public class Main {
         }
     }
 
+    // Liczba ofert z rekomendacją "Świetna" w tabeli podejrzanie tanich ofert: wyświetlonych i wszystkich
+    private static class SuperbCount {
+        private static final SuperbCount NONE = new SuperbCount(0, 0);
+
+        private final int shown;
+        private final int total;
+
+        public SuperbCount(int shown, int total) {
+            this.shown = shown;
+            this.total = total;
+        }
+    }
+
     private static RecommendationAssessment getRecommendationAssessment(double price, PriceStats stats, double zScore, String trendAnalysis) {
         double median = stats.getPercentile50();
 
@@ -68,19 +88,39 @@ public class Main {
         }
     }
 
-    private static final double SOCHACZEW_LAT = 52.2294;
-    private static final double SOCHACZEW_LON = 20.2384;
     private static final int MAX_CONCURRENT_COMBINATIONS = 4; // Maksymalna liczba równoległych kombinacji
     private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(MAX_CONCURRENT_COMBINATIONS);
+    private static final ForkJoinPool ANALYSIS_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors()); // Pula dla analizy (CPU)
+    // Terminy przebiegu dziennego: całość (-Dsweep.deadlineSeconds) i pojedyncze zapytanie skanujące (-Dsweep.scanBudgetSeconds)
+    private static final Duration SWEEP_DEADLINE = Duration.ofSeconds(Long.getLong("sweep.deadlineSeconds", 1800));
+    private static final Duration SCAN_BUDGET = Duration.ofSeconds(Long.getLong("sweep.scanBudgetSeconds", 600));
+    private static final int RANKING_TOP_K = Integer.getInteger("ranking.topK", 50); // Liczba ofert w każdej tabeli rankingu
+    private static final double SHIPPING_COST = 20.0; // Koszt wysyłki przy odsprzedaży (PLN)
+    private static final double LISTING_FEE = 10.0; // Opłata za wystawienie ogłoszenia (PLN)
+    private static final Duration ANALYSIS_GRACE = Duration.ofSeconds(30); // Czas na analizę wyników częściowych po terminie
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--migrate-history")) {
+            System.exit(HistoryMigration.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length == 1 && args[0].equals("--serve")) {
+            System.exit(runServer());
+        }
+        if (args.length > 0) {
+            System.exit(runBatch(args)); // Pule wątków scrapera nie są demonami
+        }
+
         Scanner scanner = new Scanner(System.in);
         boolean continueSearching = true;
 
-        LocationCacheManager locationCacheManager = new LocationCacheManager();
+        LocationCacheManager locationCacheManager = LocationCacheManager.open();
         DistanceCalculator distanceCalculator = new DistanceCalculator(locationCacheManager);
 
-        System.out.println("Ustawiona lokalizacja użytkownika: Sochaczew, Mazowieckie");
+        DepotConfig depots = DepotConfig.load(distanceCalculator);
+        Metrics.startServerIfConfigured();
+        QueryServer.startIfConfigured(new PriceHistoryManager(), distanceCalculator);
+
+        System.out.println("Punkty odbioru: " + String.join(", ", depots.getNames()));
 
         while (continueSearching) {
             System.out.println("\n=== iFlip ===");
@@ -93,7 +133,6 @@ public class Main {
             String modeInput = scanner.nextLine().trim();
             if (modeInput.equalsIgnoreCase("q")) {
                 System.out.println("Zakończono program.");
-                EXECUTOR.shutdown();
                 break;
             }
 
@@ -111,10 +150,10 @@ public class Main {
 
             if (modeChoice == 1) {
                 // Codzienna rekomendacja
-                handleDailyRecommendation(scanner, locationCacheManager, distanceCalculator);
+                handleDailyRecommendation(scanner, locationCacheManager, distanceCalculator, depots);
             } else {
                 // Standardowe wyszukiwanie
-                handleStandardSearch(scanner, locationCacheManager, distanceCalculator);
+                handleStandardSearch(scanner, locationCacheManager, distanceCalculator, depots);
             }
 
             System.out.print("\nCzy chcesz wyszukać ponownie? (tak/nie): ");
@@ -124,29 +163,38 @@ public class Main {
         System.out.println("\nDziękujemy za skorzystanie z wyszukiwarki OLX!");
         scanner.close();
         EXECUTOR.shutdown();
+        ANALYSIS_POOL.shutdown();
+        System.out.println("Statystyki cache’a lokalizacji: " + locationCacheManager.getStats());
+        locationCacheManager.close();
+        QueryServer.stop();
+        PriceHistoryManager.closeStores();
+        Metrics.dump();
+        Log.flush();
     }
 
     private static class CombinationResult {
         private final String model;
         private final String storage;
-        private final List<Offer> allOffers;
-        private final List<Offer> filteredOffers;
+        private final int bucketId;
+        private final OfferBatch allOffers;
+        private final OfferBatch filteredOffers;
         private final PriceStats overallStats;
         private final PriceStats statsWithProtection;
         private final PriceStats statsWithoutProtection;
         private final List<Offer> recommendedOffersWithoutProtection;
         private final List<Offer> recommendedOffersWithProtection;
         private final List<Offer> lowPriceOutlierOffers;
-        private final Map<Offer, Double> zScoresWithoutProtection;
-        private final Map<Offer, Double> zScoresWithProtection;
+        private final ZScores zScoresWithoutProtection;
+        private final ZScores zScoresWithProtection;
 
-        public CombinationResult(String model, String storage, List<Offer> allOffers, List<Offer> filteredOffers,
+        public CombinationResult(String model, String storage, OfferBatch allOffers, OfferBatch filteredOffers,
                                  PriceStats overallStats, PriceStats statsWithProtection, PriceStats statsWithoutProtection,
                                  List<Offer> recommendedOffersWithoutProtection, List<Offer> recommendedOffersWithProtection,
-                                 List<Offer> lowPriceOutlierOffers, Map<Offer, Double> zScoresWithoutProtection,
-                                 Map<Offer, Double> zScoresWithProtection) {
+                                 List<Offer> lowPriceOutlierOffers, ZScores zScoresWithoutProtection,
+                                 ZScores zScoresWithProtection) {
             this.model = model;
             this.storage = storage;
+            this.bucketId = OfferBuckets.idOf(model, storage);
             this.allOffers = allOffers;
             this.filteredOffers = filteredOffers;
             this.overallStats = overallStats;
@@ -160,7 +208,263 @@ public class Main {
         }
     }
 
-    private static void handleDailyRecommendation(Scanner scanner, LocationCacheManager locationCacheManager, DistanceCalculator distanceCalculator) {
+    // Akumulator wyników wszystkich kombinacji; łączony równolegle przez redukcję
+    private static class SweepAggregate {
+        private boolean hasOffers;
+        private int totalFilteredOffers;
+        private final List<Offer> allRecommendedWithoutProtection = new ArrayList<>();
+        private final List<Offer> allRecommendedWithProtection = new ArrayList<>();
+        private final List<Offer> allLowPriceOutlierOffers = new ArrayList<>();
+        private final BucketTable<PriceStats> overallStatsMap = new BucketTable<>();
+        private final BucketTable<PriceStats> statsWithProtectionMap = new BucketTable<>();
+        private final BucketTable<PriceStats> statsWithoutProtectionMap = new BucketTable<>();
+        private final BucketTable<ZScores> zScoresWithoutProtectionMap = new BucketTable<>();
+        private final BucketTable<ZScores> zScoresWithProtectionMap = new BucketTable<>();
+
+        private void add(CombinationResult result) {
+            if (result.filteredOffers.isEmpty()) {
+                return;
+            }
+            int key = result.bucketId;
+            hasOffers = true;
+            totalFilteredOffers += result.filteredOffers.size();
+            allRecommendedWithoutProtection.addAll(result.recommendedOffersWithoutProtection);
+            allRecommendedWithProtection.addAll(result.recommendedOffersWithProtection);
+            allLowPriceOutlierOffers.addAll(result.lowPriceOutlierOffers);
+            overallStatsMap.put(key, result.overallStats);
+            statsWithProtectionMap.put(key, result.statsWithProtection);
+            statsWithoutProtectionMap.put(key, result.statsWithoutProtection);
+            zScoresWithoutProtectionMap.put(key, result.zScoresWithoutProtection);
+            zScoresWithProtectionMap.put(key, result.zScoresWithProtection);
+        }
+
+        private void merge(SweepAggregate other) {
+            hasOffers |= other.hasOffers;
+            totalFilteredOffers += other.totalFilteredOffers;
+            allRecommendedWithoutProtection.addAll(other.allRecommendedWithoutProtection);
+            allRecommendedWithProtection.addAll(other.allRecommendedWithProtection);
+            allLowPriceOutlierOffers.addAll(other.allLowPriceOutlierOffers);
+            overallStatsMap.putAll(other.overallStatsMap);
+            statsWithProtectionMap.putAll(other.statsWithProtectionMap);
+            statsWithoutProtectionMap.putAll(other.statsWithoutProtectionMap);
+            zScoresWithoutProtectionMap.putAll(other.zScoresWithoutProtectionMap);
+            zScoresWithProtectionMap.putAll(other.zScoresWithProtectionMap);
+        }
+    }
+
+    // Analiza jednej kombinacji (CPU) – uruchamiana na ANALYSIS_POOL
+    private static CombinationResult analyzeCombination(String model, String storage, OfferBatch allOffers,
+                                                        String location, boolean todayOnly, PriceHistoryManager historyManager) {
+        OfferBatch filteredOffers = todayOnly ? allOffers.filterByDay(LocalDate.now()) : allOffers;
+        if (filteredOffers.isEmpty()) {
+            return new CombinationResult(model, storage, allOffers, filteredOffers,
+                    PriceStats.EMPTY, PriceStats.EMPTY, PriceStats.EMPTY,
+                    new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                    ZScores.NONE, ZScores.NONE);
+        }
+
+        PriceAnalyzer analyzer = new PriceAnalyzer(allOffers);
+        List<Offer> lowPriceOutlierOffers = new ArrayList<>();
+
+        PriceStats overallStats = analyzer.getOverallPriceStats(lowPriceOutlierOffers);
+        PriceStats statsWithProtection = analyzer.getPriceStatsWithProtection(lowPriceOutlierOffers);
+        PriceStats statsWithoutProtection = analyzer.getPriceStatsWithoutProtection(lowPriceOutlierOffers);
+
+        ZScores zScoresWithoutProtection = analyzer.getZScoresWithoutProtection(statsWithoutProtection);
+        ZScores zScoresWithProtection = analyzer.getZScoresWithProtection(statsWithProtection);
+
+        List<Offer> recommendedOffersWithoutProtection = analyzer.getRecommendedOffersWithoutProtection(-0.5, location.isEmpty() ? null : location, historyManager)
+                .stream()
+                .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
+                .collect(Collectors.toList());
+        List<Offer> recommendedOffersWithProtection = analyzer.getRecommendedOffersWithProtection(-0.5, location.isEmpty() ? null : location, historyManager)
+                .stream()
+                .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
+                .collect(Collectors.toList());
+
+        List<Offer> filteredLowPriceOutlierOffers = lowPriceOutlierOffers.stream()
+                .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
+                .collect(Collectors.toList());
+
+        return new CombinationResult(model, storage, allOffers, filteredOffers,
+                overallStats, statsWithProtection, statsWithoutProtection,
+                recommendedOffersWithoutProtection, recommendedOffersWithProtection,
+                filteredLowPriceOutlierOffers, zScoresWithoutProtection, zScoresWithProtection);
+    }
+
+    // Tryb samego API zapytań (--serve): historia cen bez skanowania, do zatrzymania procesu (Ctrl+C)
+    private static int runServer() {
+        LocationCacheManager locationCacheManager = LocationCacheManager.open();
+        DistanceCalculator distanceCalculator = new DistanceCalculator(locationCacheManager);
+        Metrics.startServerIfConfigured();
+        if (!QueryServer.start(Integer.getInteger("api.port", 8080), new PriceHistoryManager(), distanceCalculator)) {
+            locationCacheManager.close();
+            return 1;
+        }
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            QueryServer.stop();
+            PriceHistoryManager.closeStores();
+            locationCacheManager.close();
+            Metrics.dump();
+            Log.flush();
+            stopped.countDown();
+        }, "api-shutdown"));
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    // Tryb wsadowy (cron, integracje): bez menu i tabel; wyniki każdej kombinacji trafiają do wyjścia zaraz po analizie.
+    // Kod wyjścia: 0 – sukces, 1 – błąd zapisu, 2 – błędne ustawienia, 3 – część kombinacji nie zdążyła przed terminem.
+    private static int runBatch(String[] args) {
+        BatchConfig config;
+        List<String> models = new ArrayList<>();
+        List<String> storages = new ArrayList<>();
+        try {
+            config = BatchConfig.parse(args);
+            for (String model : config.getModels()) {
+                models.add(canonicalName(model, IPHONE_MODELS, "model"));
+            }
+            for (String storage : config.getStorages()) {
+                storages.add(canonicalName(storage, STORAGE_CAPACITIES, "pojemność"));
+            }
+        } catch (Exception e) {
+            System.err.println("Błędne ustawienia trybu wsadowego: " + e.getMessage());
+            System.err.println(BatchConfig.USAGE);
+            return 2;
+        }
+
+        Log.useStderrForConsole();
+        PrintStream records = ResultStreamWriter.reserveStdout();
+        LocationCacheManager locationCacheManager = LocationCacheManager.open();
+        DistanceCalculator distanceCalculator = new DistanceCalculator(locationCacheManager);
+        DepotConfig depots = DepotConfig.load(distanceCalculator);
+        Metrics.startServerIfConfigured();
+
+        int exitCode = 0;
+        PickupArea pickupArea = null;
+        if (PickupArea.parseCities(config.getLocation()).size() > 1) {
+            pickupArea = PickupArea.resolve(PickupArea.parseCities(config.getLocation()), config.getRadiusKm(), distanceCalculator);
+            if (pickupArea.isEmpty()) {
+                System.err.println("Nie udało się ustalić współrzędnych żadnego punktu odbioru.");
+                exitCode = 2;
+            }
+        }
+
+        if (exitCode == 0) {
+            String scrapeLocation = pickupArea != null ? "" : config.getLocation();
+            PriceHistoryManager historyManager = new PriceHistoryManager();
+            long start = System.nanoTime();
+            try (ResultStreamWriter output = ResultStreamWriter.open(config.getOutput(), config.getFormat(), records)) {
+                ScanScope sweepScope = ScanScope.bounded("batch", SWEEP_DEADLINE);
+                List<CompletableFuture<CombinationResult>> futures = startSweep(models, storages, config.getStates(),
+                        scrapeLocation, pickupArea, config.isTodayOnly(), describeStates(config.getStates()),
+                        distanceCalculator, historyManager, sweepScope,
+                        result -> streamResult(output, result, distanceCalculator, depots));
+                int unfinished = sweepScope.awaitAll(futures, ANALYSIS_GRACE);
+                sweepScope.cancel();
+                output.writeSummary(futures.size(), unfinished, (System.nanoTime() - start) / 1_000_000);
+                if (unfinished > 0) {
+                    exitCode = 3;
+                }
+            } catch (IOException e) {
+                System.err.println("Błąd zapisu wyników: " + e.getMessage());
+                exitCode = 1;
+            }
+        }
+
+        EXECUTOR.shutdown();
+        ANALYSIS_POOL.shutdown();
+        locationCacheManager.close();
+        PriceHistoryManager.closeStores();
+        Metrics.dump();
+        Log.flush();
+        return exitCode;
+    }
+
+    // Zapis jednej kombinacji (wywoływany w wątku analizy); rekordy kombinacji nie przeplatają się z innymi
+    private static void streamResult(ResultStreamWriter output, CombinationResult result,
+                                     DistanceCalculator distanceCalculator, DepotConfig depots) {
+        try {
+            synchronized (output) {
+                output.writeCombination(result.model, result.storage, result.allOffers.size(), result.filteredOffers.size(),
+                        result.overallStats, result.statsWithProtection, result.statsWithoutProtection);
+                double sellingPrice = result.overallStats.getPercentile25();
+                streamDeals(output, "recommended_without_protection", result.recommendedOffersWithoutProtection,
+                        result.zScoresWithoutProtection, result.zScoresWithoutProtection, sellingPrice, distanceCalculator, depots);
+                streamDeals(output, "recommended_with_protection", result.recommendedOffersWithProtection,
+                        result.zScoresWithProtection, result.zScoresWithProtection, sellingPrice, distanceCalculator, depots);
+                streamDeals(output, "low_price_outliers", result.lowPriceOutlierOffers,
+                        result.zScoresWithoutProtection, result.zScoresWithProtection, sellingPrice, distanceCalculator, depots);
+                output.flush();
+            }
+        } catch (IOException e) {
+            Log.error("batch.write_failed", "Błąd zapisu wyników dla " + result.model + " " + result.storage + ": " + e.getMessage(),
+                    "model", result.model, "storage", result.storage, "error", e.getMessage());
+        }
+    }
+
+    // Odległości tylko z lokalnego cache’a/słownika – tryb wsadowy nie czeka na geokodowanie
+    private static void streamDeals(ResultStreamWriter output, String table, List<Offer> offers, ZScores zScoresWithoutProtection,
+                                    ZScores zScoresWithProtection, double sellingPrice, DistanceCalculator distanceCalculator,
+                                    DepotConfig depots) throws IOException {
+        int n = offers.size();
+        double[] depotDistances = new double[n];
+        int[] nearestDepots = new int[n];
+        computeNearestDepots(offers, distanceCalculator, depots, depotDistances, nearestDepots);
+        for (int i = 0; i < n; i++) {
+            Offer offer = offers.get(i);
+            ZScores zScores = offer.hasProtectionPackage() ? zScoresWithProtection : zScoresWithoutProtection;
+            double margin = sellingPrice - (offer.getPrice() + SHIPPING_COST + LISTING_FEE);
+            output.writeDeal(table, offer, zScores.of(offer.getPrice()), sellingPrice, margin,
+                    nearestDepots[i] >= 0 ? depotDistances[i] : Double.NaN);
+        }
+    }
+
+    // Stan kombinacji dla API zapytań: statystyki i oferty z tabel z marżą liczoną jak w trybie wsadowym
+    private static MarketIndex.ScanSnapshot scanSnapshot(CombinationResult result) {
+        double sellingPrice = result.overallStats.getPercentile25();
+        List<MarketIndex.Deal> deals = new ArrayList<>();
+        addDeals(deals, "recommended_without_protection", result.recommendedOffersWithoutProtection,
+                result.zScoresWithoutProtection, result.zScoresWithoutProtection, sellingPrice);
+        addDeals(deals, "recommended_with_protection", result.recommendedOffersWithProtection,
+                result.zScoresWithProtection, result.zScoresWithProtection, sellingPrice);
+        addDeals(deals, "low_price_outliers", result.lowPriceOutlierOffers,
+                result.zScoresWithoutProtection, result.zScoresWithProtection, sellingPrice);
+        return new MarketIndex.ScanSnapshot(result.model, result.storage, result.filteredOffers.size(),
+                result.overallStats, result.statsWithProtection, result.statsWithoutProtection, deals);
+    }
+
+    private static void addDeals(List<MarketIndex.Deal> deals, String table, List<Offer> offers, ZScores zScoresWithoutProtection,
+                                 ZScores zScoresWithProtection, double sellingPrice) {
+        for (Offer offer : offers) {
+            ZScores zScores = offer.hasProtectionPackage() ? zScoresWithProtection : zScoresWithoutProtection;
+            deals.add(new MarketIndex.Deal(table, offer, zScores.of(offer.getPrice()), sellingPrice,
+                    sellingPrice - (offer.getPrice() + SHIPPING_COST + LISTING_FEE)));
+        }
+    }
+
+    // Nazwa z listy dozwolonych wartości bez względu na wielkość liter ("iphone 13" -> "iPhone 13")
+    private static String canonicalName(String value, List<String> allowed, String kind) {
+        for (String candidate : allowed) {
+            if (candidate.equalsIgnoreCase(value.trim())) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Nieznany " + kind + ": " + value);
+    }
+
+    private static String describeStates(List<String> states) {
+        return states.isEmpty() ? "wszystkie stany" : String.join(", ", states.stream()
+                .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
+                .collect(Collectors.toList()));
+    }
+
+    private static void handleDailyRecommendation(Scanner scanner, LocationCacheManager locationCacheManager, DistanceCalculator distanceCalculator, DepotConfig depots) {
         List<String> selectedModels = selectModels(scanner);
         if (selectedModels == null) return;
 
@@ -173,6 +477,14 @@ public class Main {
         String location = selectLocation(scanner);
         if (location == null) return;
 
+        PickupArea pickupArea = null;
+        if (PickupArea.parseCities(location).size() > 1) {
+            pickupArea = selectPickupArea(scanner, location, distanceCalculator);
+            if (pickupArea == null) return;
+        }
+        // Przy kilku punktach odbioru skanujemy całą Polskę raz i filtrujemy wyniki indeksem przestrzennym
+        String scrapeLocation = pickupArea != null ? "" : location;
+
         Boolean todayOnly = selectTodayOnly(scanner);
         if (todayOnly == null) return;
 
@@ -183,6 +495,9 @@ public class Main {
                 .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
                 .collect(Collectors.toList())));
         System.out.printf("Lokalizacja: %s\n", location.isEmpty() ? "Cała Polska" : location);
+        if (pickupArea != null) {
+            System.out.printf("Punkty odbioru: %s (promień %.0f km)\n", String.join(", ", pickupArea.getCities()), pickupArea.getRadiusKm());
+        }
         System.out.printf("Tylko oferty z dzisiaj: %s\n", todayOnly ? "Tak" : "Nie");
         System.out.print("\nCzy chcesz kontynuować z tymi ustawieniami? (tak/nie): ");
         String confirm = scanner.nextLine().trim().toLowerCase();
@@ -190,134 +505,42 @@ public class Main {
             return;
         }
 
-        OlxScraper scraper = new OlxScraper();
         PriceHistoryManager historyManager = new PriceHistoryManager();
-
-        // Lista przechowująca wyniki dla wszystkich kombinacji
-        List<CompletableFuture<CombinationResult>> futures = new ArrayList<>();
-        List<CombinationResult> combinationResults = new ArrayList<>();
-
-        // Równoległe scrapowanie dla każdej kombinacji model + pojemność
-        for (String model : selectedModels) {
-            for (String storage : selectedStorages) {
-                String finalModel = model;
-                String finalStorage = storage;
-                String statesDisplay = selectedStates.isEmpty() ? "wszystkie stany" : String.join(", ", selectedStates.stream()
-                        .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
-                        .collect(Collectors.toList()));
-                System.out.println("\nPlanuję skanowanie ofert dla: " + finalModel + " " + finalStorage + " (" + statesDisplay + ")");
-
-                futures.add(CompletableFuture.supplyAsync(() -> {
-                    System.out.println("Skanuję oferty dla: " + finalModel + " " + finalStorage + " (" + statesDisplay + ")");
-                    List<Offer> allOffers = scraper.scrapeOffers(finalModel, finalStorage, location, selectedStates);
-                    List<Offer> filteredOffers = todayOnly ?
-                            allOffers.stream()
-                                    .filter(offer -> offer.getDate().isEqual(LocalDate.now()))
-                                    .collect(Collectors.toList()) :
-                            allOffers;
-
-                    System.out.printf("[Skanowanie] Model: %s, Pojemność: %s, Stany: %s, Liczba ofert: %d, Wszystkie oferty: %d\n",
-                            finalModel, finalStorage, statesDisplay, filteredOffers.size(), allOffers.size());
-
-                    if (filteredOffers.isEmpty()) {
-                        return new CombinationResult(finalModel, finalStorage, allOffers, filteredOffers,
-                                new PriceStats(0, 0, 0, 0, 0),
-                                new PriceStats(0, 0, 0, 0, 0),
-                                new PriceStats(0, 0, 0, 0, 0),
-                                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
-                                new HashMap<>(), new HashMap<>());
-                    }
-
-                    historyManager.savePrices(allOffers);
-
-                    PriceAnalyzer analyzer = new PriceAnalyzer(allOffers);
-                    List<Offer> lowPriceOutlierOffers = new ArrayList<>();
-
-                    PriceStats overallStats = analyzer.getOverallPriceStats(lowPriceOutlierOffers);
-                    PriceStats statsWithProtection = analyzer.getPriceStatsWithProtection(lowPriceOutlierOffers);
-                    PriceStats statsWithoutProtection = analyzer.getPriceStatsWithoutProtection(lowPriceOutlierOffers);
-
-                    Map<Offer, Double> zScoresWithoutProtection = analyzer.calculateZScores(
-                            allOffers.stream()
-                                    .filter(offer -> !offer.hasProtectionPackage())
-                                    .filter(offer -> offer.getPrice() > 0)
-                                    .collect(Collectors.toList()),
-                            statsWithoutProtection
-                    );
-                    Map<Offer, Double> zScoresWithProtection = analyzer.calculateZScores(
-                            allOffers.stream()
-                                    .filter(Offer::hasProtectionPackage)
-                                    .filter(offer -> offer.getPrice() > 0)
-                                    .collect(Collectors.toList()),
-                            statsWithProtection
-                    );
-
-                    List<Offer> recommendedOffersWithoutProtection = analyzer.getRecommendedOffersWithoutProtection(-0.5, location.isEmpty() ? null : location, historyManager)
-                            .stream()
-                            .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
-                            .collect(Collectors.toList());
-                    List<Offer> recommendedOffersWithProtection = analyzer.getRecommendedOffersWithProtection(-0.5, location.isEmpty() ? null : location, historyManager)
-                            .stream()
-                            .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
-                            .collect(Collectors.toList());
-
-                    List<Offer> filteredLowPriceOutlierOffers = lowPriceOutlierOffers.stream()
-                            .filter(offer -> !todayOnly || offer.getDate().isEqual(LocalDate.now()))
-                            .collect(Collectors.toList());
-
-                    return new CombinationResult(finalModel, finalStorage, allOffers, filteredOffers,
-                            overallStats, statsWithProtection, statsWithoutProtection,
-                            recommendedOffersWithoutProtection, recommendedOffersWithProtection,
-                            filteredLowPriceOutlierOffers, zScoresWithoutProtection, zScoresWithProtection);
-                }, EXECUTOR));
-            }
-        }
-
-        // Oczekiwanie na zakończenie wszystkich futures
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        combinationResults = futures.stream()
+        String statesDisplay = describeStates(selectedStates);
+
+        // Anulowanie zakresu przebiegu (termin globalny) przechodzi na zakresy zapytań i trwające pobierania stron
+        ScanScope sweepScope = ScanScope.bounded("sweep", SWEEP_DEADLINE);
+        List<CompletableFuture<CombinationResult>> futures = startSweep(selectedModels, selectedStorages, selectedStates,
+                scrapeLocation, pickupArea, todayOnly, statesDisplay, distanceCalculator, historyManager, sweepScope, result -> { });
+
+        // Oczekiwanie do terminu przebiegu; kombinacje nieukończone w tym czasie są pomijane (raport częściowy),
+        // a ich zadania anulowane. Komunikaty z wątków roboczych wypisywane przed statystykami.
+        int unfinished = sweepScope.awaitAll(futures, ANALYSIS_GRACE);
+        sweepScope.cancel();
+        List<CombinationResult> combinationResults = futures.stream()
+                .filter(future -> future.isDone() && !future.isCompletedExceptionally())
                 .map(CompletableFuture::join)
                 .collect(Collectors.toList());
+        if (unfinished > 0) {
+            Log.warn("sweep.deadline", "Termin przebiegu minął: pominięto " + unfinished + " z " + futures.size() + " kombinacji",
+                    "unfinished", unfinished, "combinations", futures.size());
+        }
+        Log.flush();
 
-        // Agregacja wyników do globalnych list
-        List<Offer> allFilteredOffers = new ArrayList<>();
-        List<Offer> allRecommendedWithoutProtection = new ArrayList<>();
-        List<Offer> allRecommendedWithProtection = new ArrayList<>();
-        List<Offer> allLowPriceOutlierOffers = new ArrayList<>();
-        Map<String, PriceStats> overallStatsMap = new HashMap<>();
-        Map<String, PriceStats> statsWithProtectionMap = new HashMap<>();
-        Map<String, PriceStats> statsWithoutProtectionMap = new HashMap<>();
-        Map<String, Map<Offer, Double>> zScoresWithoutProtectionMap = new HashMap<>();
-        Map<String, Map<Offer, Double>> zScoresWithProtectionMap = new HashMap<>();
-
-        boolean hasOffers = false;
+        // Równoległa redukcja wyników do globalnych list
+        List<CombinationResult> finalCombinationResults = combinationResults;
+        SweepAggregate aggregate = ANALYSIS_POOL.submit(() -> finalCombinationResults.parallelStream()
+                .collect(SweepAggregate::new, SweepAggregate::add, SweepAggregate::merge)).join();
+
+        // Wyświetlanie statystyk dla każdej kombinacji
         for (CombinationResult result : combinationResults) {
-            String key = result.model + " " + result.storage;
             if (!result.filteredOffers.isEmpty()) {
-                hasOffers = true;
-                allFilteredOffers.addAll(result.filteredOffers);
-                allRecommendedWithoutProtection.addAll(result.recommendedOffersWithoutProtection);
-                allRecommendedWithProtection.addAll(result.recommendedOffersWithProtection);
-                allLowPriceOutlierOffers.addAll(result.lowPriceOutlierOffers);
-                overallStatsMap.put(key, result.overallStats);
-                statsWithProtectionMap.put(key, result.statsWithProtection);
-                statsWithoutProtectionMap.put(key, result.statsWithoutProtection);
-                zScoresWithoutProtectionMap.put(key, result.zScoresWithoutProtection);
-                zScoresWithProtectionMap.put(key, result.zScoresWithProtection);
-
-                // Wyświetlanie statystyk dla każdej kombinacji
-                String statesDisplay = selectedStates.isEmpty() ? "wszystkie stany" : String.join(", ", selectedStates.stream()
-                        .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
-                        .collect(Collectors.toList()));
                 System.out.println("\n=== Statystyki dla: " + result.model + " " + result.storage + " (" + statesDisplay + ") ===");
                 displayStats(result.model, result.storage, result.overallStats, result.statsWithoutProtection, result.statsWithProtection);
             }
         }
 
-        if (!hasOffers) {
-            String statesDisplay = selectedStates.isEmpty() ? "wszystkie stany" : String.join(", ", selectedStates.stream()
-                    .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
-                    .collect(Collectors.toList()));
+        if (!aggregate.hasOffers) {
             System.out.println("\nBrak ofert dla wybranych modeli: " + String.join(", ", selectedModels) +
                     ", pojemności: " + String.join(", ", selectedStorages) + ", w stanie: " + statesDisplay +
                     (todayOnly ? " (tylko dzisiaj)" : ""));
@@ -325,14 +548,143 @@ public class Main {
         }
 
         // Wyświetlanie globalnych tabel
-        displayResults(allFilteredOffers, selectedModels, selectedStorages, location, todayOnly,
-                overallStatsMap, statsWithoutProtectionMap, statsWithProtectionMap,
-                allRecommendedWithoutProtection, allRecommendedWithProtection,
-                allLowPriceOutlierOffers, zScoresWithoutProtectionMap, zScoresWithProtectionMap,
-                historyManager, distanceCalculator, scanner);
+        displayResults(aggregate.totalFilteredOffers, selectedModels, selectedStorages, location, todayOnly,
+                aggregate.overallStatsMap, aggregate.statsWithoutProtectionMap, aggregate.statsWithProtectionMap,
+                aggregate.allRecommendedWithoutProtection, aggregate.allRecommendedWithProtection,
+                aggregate.allLowPriceOutlierOffers, aggregate.zScoresWithoutProtectionMap, aggregate.zScoresWithProtectionMap,
+                historyManager, distanceCalculator, depots);
     }
 
-    private static void handleStandardSearch(Scanner scanner, LocationCacheManager locationCacheManager, DistanceCalculator distanceCalculator) {
+    // Skanowanie i analiza wszystkich kombinacji model + pojemność (tryb interaktywny i wsadowy);
+    // onResult wywoływane w wątku analizy, gdy tylko kombinacja jest gotowa
+    private static List<CompletableFuture<CombinationResult>> startSweep(List<String> selectedModels, List<String> selectedStorages,
+                                                                       List<String> selectedStates, String scrapeLocation,
+                                                                       PickupArea pickupArea, boolean todayOnly, String statesDisplay,
+                                                                       DistanceCalculator distanceCalculator, PriceHistoryManager historyManager,
+                                                                       ScanScope sweepScope, Consumer<CombinationResult> onResult) {
+        OlxScraper scraper = new OlxScraper();
+        RunCache runCache = new RunCache();
+        List<CompletableFuture<CombinationResult>> futures = new ArrayList<>();
+
+        // Świeże punkty kontrolne z poprzedniego przebiegu są używane bez ponownego pobierania stron;
+        // brakujące modele danej pojemności łączone są w wielomodelowe zapytania OLX (EXECUTOR)
+        BucketTable<CompletableFuture<OfferBatch>> scans = new BucketTable<>();
+        BitSet cachedBuckets = new BitSet();
+        // Początek skanowania kombinacji dla sweep_combination_seconds: wypełniane przed uruchomieniem zadań,
+        // a zadanie zapytania przestawia je na faktyczny start (czas w kolejce EXECUTOR nie jest liczony)
+        BucketTable<AtomicLong> scanStarts = new BucketTable<>();
+        for (String model : selectedModels) {
+            for (String storage : selectedStorages) {
+                scanStarts.put(OfferBuckets.idOf(model, storage), new AtomicLong(System.nanoTime()));
+            }
+        }
+        for (String storage : selectedStorages) {
+            List<String> missingModels = new ArrayList<>();
+            for (String model : selectedModels) {
+                int bucketId = OfferBuckets.idOf(model, storage);
+                OfferBatch cached = runCache.load(RunCache.queryKey(model, storage, scrapeLocation, selectedStates), model, storage);
+                if (cached != null) {
+                    Log.info("sweep.cached", "\nUżywam zapisanych wyników dla: " + model + " " + storage + " (" + statesDisplay + ")",
+                            "model", model, "storage", storage);
+                    scans.put(bucketId, CompletableFuture.completedFuture(cached));
+                    cachedBuckets.set(bucketId);
+                } else {
+                    missingModels.add(model);
+                }
+            }
+
+            for (QueryPlanner.Query query : QueryPlanner.plan(missingModels, storage)) {
+                String queryDisplay = String.join(", ", query.getModels()) + " " + storage + " (" + statesDisplay + ")";
+                Log.info("sweep.query_planned", "\nPlanuję skanowanie ofert dla: " + queryDisplay,
+                        "models", String.join(", ", query.getModels()), "storage", storage);
+                CompletableFuture<BucketTable<OfferBatch>> queryFuture = CompletableFuture.supplyAsync(() -> {
+                    Log.info("sweep.query_started", "Skanuję oferty dla: " + queryDisplay,
+                            "models", String.join(", ", query.getModels()), "storage", storage);
+                    long queryStart = System.nanoTime();
+                    for (int bucketId : query.getBucketIds()) {
+                        scanStarts.get(bucketId).set(queryStart);
+                    }
+                    // Budżet liczony od faktycznego startu zapytania, nie od zaplanowania; po skanowaniu zakres jest zamykany
+                    try (ScanScope queryScope = sweepScope.child(queryDisplay, SCAN_BUDGET)) {
+                        BucketTable<OfferBatch> scanned = scraper.scrapeQuery(query, scrapeLocation, selectedStates, queryScope);
+                        if (queryScope.isCancelled()) {
+                            // Wyniki częściowe trafiają do raportu, ale nie do punktów kontrolnych
+                            Log.warn("sweep.query_partial", "Przekroczono czas skanowania dla: " + queryDisplay + " – wyniki częściowe",
+                                    "models", String.join(", ", query.getModels()), "storage", storage);
+                            return scanned;
+                        }
+                        if (queryScope.getFailedTasks() > 0) {
+                            // Strony, których nie udało się pobrać (np. po wyczerpaniu prób przy 429), nie trafiają do punktu kontrolnego
+                            Log.warn("sweep.query_incomplete", "Nie pobrano " + queryScope.getFailedTasks() + " stron dla: " + queryDisplay
+                                            + " – wyniki częściowe", "models", String.join(", ", query.getModels()), "storage", storage,
+                                    "failedPages", queryScope.getFailedTasks());
+                            return scanned;
+                        }
+                        for (String model : query.getModels()) {
+                            runCache.save(RunCache.queryKey(model, storage, scrapeLocation, selectedStates),
+                                    scanned.get(OfferBuckets.idOf(model, storage)));
+                        }
+                        return scanned;
+                    }
+                }, EXECUTOR);
+                for (int bucketId : query.getBucketIds()) {
+                    scans.put(bucketId, queryFuture.thenApply(scanned -> scanned.get(bucketId)));
+                }
+            }
+        }
+
+        // Filtrowanie i zapis historii dla każdej kombinacji, analiza na osobnej puli ForkJoin,
+        // aby obliczenia nie konkurowały z oczekiwaniem na sieć
+        for (String model : selectedModels) {
+            for (String storage : selectedStorages) {
+                String finalModel = model;
+                String finalStorage = storage;
+                PickupArea finalPickupArea = pickupArea;
+                int bucketId = OfferBuckets.idOf(model, storage);
+                boolean fromCache = cachedBuckets.get(bucketId);
+
+                futures.add(scans.get(bucketId).thenApply(scannedOffers -> {
+                    OfferBatch allOffers = finalPickupArea != null ? finalPickupArea.filter(scannedOffers, distanceCalculator) : scannedOffers;
+                    int filteredCount = todayOnly ? allOffers.countOnDay(LocalDate.now()) : allOffers.size();
+
+                    Log.info("sweep.combination_scanned", String.format("[Skanowanie] Model: %s, Pojemność: %s, Stany: %s, Liczba ofert: %d, Wszystkie oferty: %d",
+                                    finalModel, finalStorage, statesDisplay, filteredCount, allOffers.size()),
+                            "model", finalModel, "storage", finalStorage, "filteredOffers", filteredCount,
+                            "allOffers", allOffers.size(), "fromCache", fromCache);
+
+                    // Oferty z punktu kontrolnego są już w historii cen
+                    if (filteredCount > 0 && !fromCache) {
+                        historyManager.savePrices(allOffers);
+                        QueryServer.recordPrices(allOffers);
+                    }
+                    return allOffers;
+                }).thenApplyAsync(allOffers -> {
+                    CombinationResult result = analyzeCombination(finalModel, finalStorage, allOffers,
+                            scrapeLocation, todayOnly, historyManager);
+                    Metrics.recordNanos("sweep_combination_seconds", "Czas kombinacji od startu jej skanowania do zakończenia analizy",
+                            System.nanoTime() - scanStarts.get(bucketId).get());
+                    return result;
+                }, ANALYSIS_POOL)
+                        .exceptionally(e -> {
+                            // Błąd jednej kombinacji nie przerywa całego przebiegu; ukończone są już zapisane
+                            Log.error("sweep.combination_failed", "Błąd podczas przetwarzania " + finalModel + " " + finalStorage + ": " + e.getMessage(),
+                                    "model", finalModel, "storage", finalStorage, "error", e.getMessage());
+                            return analyzeCombination(finalModel, finalStorage, new OfferBatch(), scrapeLocation, todayOnly, historyManager);
+                        })
+                        .thenApply(result -> {
+                            if (QueryServer.isRunning()) {
+                                QueryServer.publishScan(scanSnapshot(result));
+                            }
+                            onResult.accept(result);
+                            return result;
+                        }));
+            }
+        }
+        return futures;
+    }
+
+
+    private static void handleStandardSearch(Scanner scanner, LocationCacheManager locationCacheManager, DistanceCalculator distanceCalculator, DepotConfig depots) {
         String selectedModel = selectModel(scanner);
         if (selectedModel == null) return;
 
@@ -345,6 +697,14 @@ public class Main {
         String location = selectLocation(scanner);
         if (location == null) return;
 
+        PickupArea pickupArea = null;
+        if (PickupArea.parseCities(location).size() > 1) {
+            pickupArea = selectPickupArea(scanner, location, distanceCalculator);
+            if (pickupArea == null) return;
+        }
+        // Przy kilku punktach odbioru skanujemy całą Polskę raz i filtrujemy wyniki indeksem przestrzennym
+        String scrapeLocation = pickupArea != null ? "" : location;
+
         Boolean todayOnly = selectTodayOnly(scanner);
         if (todayOnly == null) return;
 
@@ -355,6 +715,9 @@ public class Main {
                 .map(s -> DEVICE_STATES.get(Arrays.asList("new", "used", "damaged").indexOf(s)))
                 .collect(Collectors.toList())));
         System.out.printf("Lokalizacja: %s\n", location.isEmpty() ? "Cała Polska" : location);
+        if (pickupArea != null) {
+            System.out.printf("Punkty odbioru: %s (promień %.0f km)\n", String.join(", ", pickupArea.getCities()), pickupArea.getRadiusKm());
+        }
         System.out.printf("Tylko oferty z dzisiaj: %s\n", todayOnly ? "Tak" : "Nie");
         System.out.print("\nCzy chcesz kontynuować z tymi ustawieniami? (tak/nie): ");
         String confirm = scanner.nextLine().trim().toLowerCase();
@@ -365,10 +728,14 @@ public class Main {
         System.out.println("Wybrane stany przed scrapowaniem: " + selectedStates);
 
         OlxScraper scraper = new OlxScraper();
-        List<Offer> offers = scraper.scrapeOffers(selectedModel, selectedStorage, location, selectedStates);
+        OfferBatch offers = scraper.scrapeOfferBatch(selectedModel, selectedStorage, scrapeLocation, selectedStates);
+        if (pickupArea != null) {
+            offers = pickupArea.filter(offers, distanceCalculator);
+        }
         PriceAnalyzer analyzer = new PriceAnalyzer(offers);
         PriceHistoryManager historyManager = new PriceHistoryManager();
         historyManager.savePrices(offers);
+        QueryServer.recordPrices(offers);
 
         List<Offer> lowPriceOutlierOffers = new ArrayList<>();
 
@@ -380,43 +747,31 @@ public class Main {
         System.out.println("\n=== Statystyki dla: " + selectedModel + " " + selectedStorage + " ===");
         displayStats(selectedModel, selectedStorage, overallStats, statsWithoutProtection, statsWithProtection);
 
-        Map<Offer, Double> zScoresWithoutProtection = analyzer.calculateZScores(
-                offers.stream()
-                        .filter(offer -> !offer.hasProtectionPackage())
-                        .filter(offer -> offer.getPrice() > 0)
-                        .collect(Collectors.toList()),
-                statsWithoutProtection
-        );
-        Map<Offer, Double> zScoresWithProtection = analyzer.calculateZScores(
-                offers.stream()
-                        .filter(Offer::hasProtectionPackage)
-                        .filter(offer -> offer.getPrice() > 0)
-                        .collect(Collectors.toList()),
-                statsWithProtection
-        );
-
-        List<Offer> recommendedOffersWithoutProtection = analyzer.getRecommendedOffersWithoutProtection(-0.5, location.isEmpty() ? null : location, historyManager);
-        List<Offer> recommendedOffersWithProtection = analyzer.getRecommendedOffersWithProtection(-0.5, location.isEmpty() ? null : location, historyManager);
+        ZScores zScoresWithoutProtection = analyzer.getZScoresWithoutProtection(statsWithoutProtection);
+        ZScores zScoresWithProtection = analyzer.getZScoresWithProtection(statsWithProtection);
+
+        List<Offer> recommendedOffersWithoutProtection = analyzer.getRecommendedOffersWithoutProtection(-0.5, scrapeLocation.isEmpty() ? null : scrapeLocation, historyManager);
+        List<Offer> recommendedOffersWithProtection = analyzer.getRecommendedOffersWithProtection(-0.5, scrapeLocation.isEmpty() ? null : scrapeLocation, historyManager);
         recommendedOffersWithoutProtection.sort(Comparator.comparingDouble(Offer::getPrice));
         recommendedOffersWithProtection.sort(Comparator.comparingDouble(Offer::getPrice));
 
-        Map<String, PriceStats> overallStatsMap = new HashMap<>();
-        Map<String, PriceStats> statsWithProtectionMap = new HashMap<>();
-        Map<String, PriceStats> statsWithoutProtectionMap = new HashMap<>();
-        Map<String, Map<Offer, Double>> zScoresWithoutProtectionMap = new HashMap<>();
-        Map<String, Map<Offer, Double>> zScoresWithProtectionMap = new HashMap<>();
-        String key = selectedModel + " " + selectedStorage;
+        BucketTable<PriceStats> overallStatsMap = new BucketTable<>();
+        BucketTable<PriceStats> statsWithProtectionMap = new BucketTable<>();
+        BucketTable<PriceStats> statsWithoutProtectionMap = new BucketTable<>();
+        BucketTable<ZScores> zScoresWithoutProtectionMap = new BucketTable<>();
+        BucketTable<ZScores> zScoresWithProtectionMap = new BucketTable<>();
+        int key = OfferBuckets.idOf(selectedModel, selectedStorage);
         overallStatsMap.put(key, overallStats);
         statsWithProtectionMap.put(key, statsWithProtection);
         statsWithoutProtectionMap.put(key, statsWithoutProtection);
         zScoresWithoutProtectionMap.put(key, zScoresWithoutProtection);
         zScoresWithProtectionMap.put(key, zScoresWithProtection);
 
-        displayResults(offers, Collections.singletonList(selectedModel), Collections.singletonList(selectedStorage), location, todayOnly,
+        displayResults(todayOnly ? offers.countOnDay(LocalDate.now()) : offers.size(), Collections.singletonList(selectedModel), Collections.singletonList(selectedStorage), location, todayOnly,
                 overallStatsMap, statsWithoutProtectionMap, statsWithProtectionMap,
                 recommendedOffersWithoutProtection, recommendedOffersWithProtection,
                 lowPriceOutlierOffers, zScoresWithoutProtectionMap, zScoresWithProtectionMap,
-                historyManager, distanceCalculator, scanner);
+                historyManager, distanceCalculator, depots);
     }
 
     private static List<String> selectModels(Scanner scanner) {
@@ -676,7 +1031,8 @@ public class Main {
 
     private static String selectLocation(Scanner scanner) {
         System.out.println("\n=== Wybór lokalizacji ===");
-        System.out.println("Wpisz nazwę miasta (np. Warszawa, Kraków) lub zostaw puste dla całej Polski.");
+        System.out.println("Wpisz nazwę miasta (np. Warszawa) lub zostaw puste dla całej Polski.");
+        System.out.println("Możesz też podać kilka punktów odbioru oddzielonych przecinkiem (np. Warszawa, Łódź).");
         System.out.print("Lokalizacja lub 'q' aby wyjść: ");
 
         String location = scanner.nextLine().trim();
@@ -685,7 +1041,7 @@ public class Main {
             return null;
         }
 
-        if (!location.isEmpty() && !location.matches("[a-zA-ZąęłńóśźżĄĘŁŃÓŚŹŻ\\s-]{2,}")) {
+        if (!location.isEmpty() && !location.matches("[a-zA-ZąęłńóśźżĄĘŁŃÓŚŹŻ\\s,-]{2,}")) {
             System.out.println("Proszę wpisać poprawną nazwę miasta (tylko litery, min. 2 znaki).");
             return null;
         }
@@ -693,6 +1049,38 @@ public class Main {
         return location;
     }
 
+    private static PickupArea selectPickupArea(Scanner scanner, String location, DistanceCalculator distanceCalculator) {
+        System.out.println("\n=== Promień od punktów odbioru ===");
+        System.out.print("Wpisz promień w km (domyślnie 50) lub 'q' aby wyjść: ");
+
+        String input = scanner.nextLine().trim();
+        if (input.equalsIgnoreCase("q")) {
+            System.out.println("Anulowano wybór.");
+            return null;
+        }
+
+        double radiusKm = 50;
+        if (!input.isEmpty()) {
+            try {
+                radiusKm = Double.parseDouble(input.replace(",", "."));
+                if (radiusKm <= 0) {
+                    System.out.println("Promień musi być większy od zera.");
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Proszę wpisać poprawną liczbę kilometrów.");
+                return null;
+            }
+        }
+
+        PickupArea pickupArea = PickupArea.resolve(PickupArea.parseCities(location), radiusKm, distanceCalculator);
+        if (pickupArea.isEmpty()) {
+            System.out.println("Nie udało się ustalić współrzędnych żadnego punktu odbioru.");
+            return null;
+        }
+        return pickupArea;
+    }
+
     private static Boolean selectTodayOnly(Scanner scanner) {
         System.out.println("\n=== Wybór ofert z dzisiaj ===");
         System.out.println("Czy chcesz zobaczyć tylko oferty dodane dzisiaj? (tak/nie)");
@@ -733,20 +1121,14 @@ public class Main {
         System.out.println("----------------------------------------");
     }
 
-    private static void displayResults(List<Offer> offers, List<String> models, List<String> storages, String location, Boolean todayOnly,
-                                       Map<String, PriceStats> overallStatsMap, Map<String, PriceStats> statsWithoutProtectionMap,
-                                       Map<String, PriceStats> statsWithProtectionMap, List<Offer> recommendedWithout,
+    private static void displayResults(int offerCount, List<String> models, List<String> storages, String location, Boolean todayOnly,
+                                       BucketTable<PriceStats> overallStatsMap, BucketTable<PriceStats> statsWithoutProtectionMap,
+                                       BucketTable<PriceStats> statsWithProtectionMap, List<Offer> recommendedWithout,
                                        List<Offer> recommendedWith, List<Offer> lowPriceOutlierOffers,
-                                       Map<String, Map<Offer, Double>> zScoresWithoutProtectionMap,
-                                       Map<String, Map<Offer, Double>> zScoresWithProtectionMap,
-                                       PriceHistoryManager historyManager, DistanceCalculator distanceCalculator, Scanner scanner) {
+                                       BucketTable<ZScores> zScoresWithoutProtectionMap,
+                                       BucketTable<ZScores> zScoresWithProtectionMap,
+                                       PriceHistoryManager historyManager, DistanceCalculator distanceCalculator, DepotConfig depots) {
         // Filtrowanie ofert, jeśli wybrano tylko dzisiejsze
-        List<Offer> filteredOffers = todayOnly ?
-                offers.stream()
-                        .filter(offer -> offer.getDate().isEqual(LocalDate.now()))
-                        .collect(Collectors.toList()) :
-                offers;
-
         List<Offer> filteredRecommendedWithout = todayOnly ?
                 recommendedWithout.stream()
                         .filter(offer -> offer.getDate().isEqual(LocalDate.now()))
@@ -765,23 +1147,32 @@ public class Main {
                         .collect(Collectors.toList()) :
                 lowPriceOutlierOffers;
 
+        // Wstępne pobranie współrzędnych wszystkich wyświetlanych lokalizacji, aby tabele nie czekały na sieć
+        List<String> displayedLocations = new ArrayList<>();
+        for (List<Offer> table : Arrays.asList(filteredRecommendedWithout, filteredRecommendedWith, filteredLowPriceOutlierOffers)) {
+            for (Offer offer : table) {
+                displayedLocations.add(offer.getLocation());
+            }
+        }
+        distanceCalculator.prefetchCoordinates(displayedLocations).join();
+
         System.out.println("\n=== Wyniki wyszukiwania ===");
         System.out.printf("Znaleziono %d ofert dla modeli: %s, pojemności: %s, Lokalizacja: %s%s\n",
-                filteredOffers.size(), String.join(", ", models), String.join(", ", storages),
+                offerCount, String.join(", ", models), String.join(", ", storages),
                 location.isEmpty() ? "Cała Polska" : location, todayOnly ? " (tylko dzisiaj)" : "");
         System.out.println("----------------------------------------");
 
         System.out.println("\nNotatka: Rekomendacje uwzględniają oferty z ceną poniżej mediany i z-score poniżej -0.5. " +
                 "Oferty zgodne z trendem cenowym są oznaczone w kolumnie 'Rekomendacja'.");
-        displayRecommendations("Oferty bez pakietu ochronnego", filteredRecommendedWithout, statsWithoutProtectionMap, zScoresWithoutProtectionMap, overallStatsMap, historyManager, distanceCalculator);
-        displayRecommendations("Oferty z pakietem ochronnym", filteredRecommendedWith, statsWithProtectionMap, zScoresWithProtectionMap, overallStatsMap, historyManager, distanceCalculator);
-        displayLowPriceOutliers("Podejrzane tanie oferty (ceny poniżej 5.0 percentyla)", filteredLowPriceOutlierOffers, statsWithoutProtectionMap, statsWithProtectionMap, zScoresWithoutProtectionMap, zScoresWithProtectionMap, overallStatsMap, historyManager, distanceCalculator);
+        displayRecommendations("Oferty bez pakietu ochronnego", filteredRecommendedWithout, statsWithoutProtectionMap, zScoresWithoutProtectionMap, overallStatsMap, historyManager, distanceCalculator, depots);
+        displayRecommendations("Oferty z pakietem ochronnym", filteredRecommendedWith, statsWithProtectionMap, zScoresWithProtectionMap, overallStatsMap, historyManager, distanceCalculator, depots);
+        SuperbCount superb = displayLowPriceOutliers("Podejrzane tanie oferty (ceny poniżej 5.0 percentyla)", filteredLowPriceOutlierOffers, statsWithoutProtectionMap, statsWithProtectionMap, zScoresWithoutProtectionMap, zScoresWithProtectionMap, overallStatsMap, historyManager, distanceCalculator, depots);
 
         // Informacja o najlepszych ofertach
-        promptOpenOffers(filteredRecommendedWithout, filteredRecommendedWith, filteredLowPriceOutlierOffers, statsWithoutProtectionMap, statsWithProtectionMap, zScoresWithoutProtectionMap, zScoresWithProtectionMap, historyManager, scanner);
+        promptOpenOffers(superb);
     }
 
-    private static void displayRecommendations(String title, List<Offer> recommendations, Map<String, PriceStats> statsMap, Map<String, Map<Offer, Double>> zScoresMap, Map<String, PriceStats> overallStatsMap, PriceHistoryManager historyManager, DistanceCalculator distanceCalculator) {
+    private static void displayRecommendations(String title, List<Offer> recommendations, BucketTable<PriceStats> statsMap, BucketTable<ZScores> zScoresMap, BucketTable<PriceStats> overallStatsMap, PriceHistoryManager historyManager, DistanceCalculator distanceCalculator, DepotConfig depots) {
         if (recommendations.isEmpty()) {
             System.out.println("\n" + title + ":");
             System.out.println("Brak rekomendowanych ofert (cena poniżej mediany i z-score poniżej -0.5).");
@@ -789,21 +1180,16 @@ public class Main {
             return;
         }
 
-        double shippingCost = 20.0;
-        double listingFee = 10.0;
-
-        // Sortowanie według marży (malejąco)
-        List<Offer> sortedRecommendations = recommendations.stream()
-                .sorted((o1, o2) -> {
-                    String key1 = o1.getModel() + " " + o1.getStorageCapacity();
-                    String key2 = o2.getModel() + " " + o2.getStorageCapacity();
-                    double sellingPrice1 = overallStatsMap.getOrDefault(key1, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
-                    double sellingPrice2 = overallStatsMap.getOrDefault(key2, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
-                    double margin1 = sellingPrice1 - (o1.getPrice() + shippingCost + listingFee);
-                    double margin2 = sellingPrice2 - (o2.getPrice() + shippingCost + listingFee);
-                    return Double.compare(margin2, margin1); // Malejąco
-                })
-                .collect(Collectors.toList());
+        double shippingCost = SHIPPING_COST;
+        double listingFee = LISTING_FEE;
+
+        // Odległość do najbliższego punktu odbioru liczona raz dla całej tabeli;
+        // ranking według marży pomniejszonej o koszt dojazdu (malejąco)
+        int n = recommendations.size();
+        double[] depotDistances = new double[n];
+        int[] nearestDepots = new int[n];
+        computeNearestDepots(recommendations, distanceCalculator, depots, depotDistances, nearestDepots);
+        int[] order = rankByScore(recommendations, depotDistances, depots.getCostPerKm(), overallStatsMap, shippingCost, listingFee);
 
         System.out.println("\n" + title + ":");
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
@@ -811,17 +1197,18 @@ public class Main {
                 "Tytuł oferty", "Cena (PLN)", "Rekomendacja", "Data", "Lokalizacja", "Z-Score", "Cena sprzedaży", "Marża", "Trend cenowy", "URL");
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
 
-        for (Offer offer : sortedRecommendations) {
-            String key = offer.getModel() + " " + offer.getStorageCapacity();
-            PriceStats stats = statsMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0));
-            Map<Offer, Double> zScores = zScoresMap.getOrDefault(key, new HashMap<>());
-            double sellingPrice = overallStatsMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
+        for (int index : order) {
+            Offer offer = recommendations.get(index);
+            int key = offer.getBucketId();
+            PriceStats stats = statsMap.getOrDefault(key, PriceStats.EMPTY);
+            ZScores zScores = zScoresMap.getOrDefault(key, ZScores.NONE);
+            double sellingPrice = overallStatsMap.getOrDefault(key, PriceStats.EMPTY).getPercentile25();
 
             String shortTitle = String.format("%s %s %s", offer.getModel(), offer.getStorageCapacity(), offer.getTitle());
             if (shortTitle.length() > 48) {
                 shortTitle = shortTitle.substring(0, 45) + "...";
             }
-            double zScore = zScores.getOrDefault(offer, 0.0);
+            double zScore = zScores.of(offer.getPrice());
             String trendAnalysis = historyManager.analyzePriceTrend(offer.getModel(), offer.getStorageCapacity(), offer.hasProtectionPackage(), offer.getPrice());
             RecommendationAssessment assessment = getRecommendationAssessment(offer.getPrice(), stats, zScore, trendAnalysis);
 
@@ -838,13 +1225,8 @@ public class Main {
 
             String locationDisplay = offer.getLocation().isEmpty() ? "Cała Polska" : offer.getLocation();
             if (!offer.getLocation().isEmpty()) {
-                double[] offerCoordinates = distanceCalculator.getCoordinates(offer.getLocation());
-                if (offerCoordinates != null) {
-                    double distance = distanceCalculator.calculateHaversineDistance(
-                            SOCHACZEW_LAT, SOCHACZEW_LON,
-                            offerCoordinates[0], offerCoordinates[1]
-                    );
-                    locationDisplay = String.format("%s (%.2f km)", offer.getLocation(), distance);
+                if (nearestDepots[index] >= 0) {
+                    locationDisplay = String.format("%s (%.2f km)", offer.getLocation(), depotDistances[index]);
                 } else {
                     locationDisplay = offer.getLocation() + " (Brak danych)";
                 }
@@ -859,32 +1241,51 @@ public class Main {
                     locationDisplay, zScore, sellingPrice, marginText, trendAnalysis, offer.getUrl());
         }
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
+        printRankingFooter(order.length, n);
         System.out.println("----------------------------------------");
     }
 
-    private static void displayLowPriceOutliers(String title, List<Offer> lowPriceOutlierOffers, Map<String, PriceStats> statsWithoutProtectionMap, Map<String, PriceStats> statsWithProtectionMap, Map<String, Map<Offer, Double>> zScoresWithoutProtectionMap, Map<String, Map<Offer, Double>> zScoresWithProtectionMap, Map<String, PriceStats> overallStatsMap, PriceHistoryManager historyManager, DistanceCalculator distanceCalculator) {
+    // Rekomendacja liczona raz dla każdej oferty (także spoza RANKING_TOP_K), żeby zwrócić
+    // liczbę ofert "Świetna" bez ponownego odpytywania historii cen
+    private static SuperbCount displayLowPriceOutliers(String title, List<Offer> lowPriceOutlierOffers, BucketTable<PriceStats> statsWithoutProtectionMap, BucketTable<PriceStats> statsWithProtectionMap, BucketTable<ZScores> zScoresWithoutProtectionMap, BucketTable<ZScores> zScoresWithProtectionMap, BucketTable<PriceStats> overallStatsMap, PriceHistoryManager historyManager, DistanceCalculator distanceCalculator, DepotConfig depots) {
         if (lowPriceOutlierOffers.isEmpty()) {
             System.out.println("\n" + title + ":");
             System.out.println("Brak podejrzanych tanich ofert (ceny poniżej 5.0 percentyla).");
             System.out.println("----------------------------------------");
-            return;
+            return SuperbCount.NONE;
         }
 
-        double shippingCost = 20.0;
-        double listingFee = 10.0;
-
-        // Sortowanie według marży (malejąco)
-        List<Offer> sortedOutliers = lowPriceOutlierOffers.stream()
-                .sorted((o1, o2) -> {
-                    String key1 = o1.getModel() + " " + o1.getStorageCapacity();
-                    String key2 = o2.getModel() + " " + o2.getStorageCapacity();
-                    double sellingPrice1 = overallStatsMap.getOrDefault(key1, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
-                    double sellingPrice2 = overallStatsMap.getOrDefault(key2, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
-                    double margin1 = sellingPrice1 - (o1.getPrice() + shippingCost + listingFee);
-                    double margin2 = sellingPrice2 - (o2.getPrice() + shippingCost + listingFee);
-                    return Double.compare(margin2, margin1); // Malejąco
-                })
-                .collect(Collectors.toList());
+        double shippingCost = SHIPPING_COST;
+        double listingFee = LISTING_FEE;
+
+        // Odległość do najbliższego punktu odbioru liczona raz dla całej tabeli;
+        // ranking według marży pomniejszonej o koszt dojazdu (malejąco)
+        int n = lowPriceOutlierOffers.size();
+        double[] depotDistances = new double[n];
+        int[] nearestDepots = new int[n];
+        computeNearestDepots(lowPriceOutlierOffers, distanceCalculator, depots, depotDistances, nearestDepots);
+        int[] order = rankByScore(lowPriceOutlierOffers, depotDistances, depots.getCostPerKm(), overallStatsMap, shippingCost, listingFee);
+
+        double[] zScores = new double[n];
+        String[] trendAnalyses = new String[n];
+        RecommendationAssessment[] assessments = new RecommendationAssessment[n];
+        int superbTotal = 0;
+        for (int i = 0; i < n; i++) {
+            Offer offer = lowPriceOutlierOffers.get(i);
+            int key = offer.getBucketId();
+            PriceStats relevantStats = offer.hasProtectionPackage() ?
+                    statsWithProtectionMap.getOrDefault(key, PriceStats.EMPTY) :
+                    statsWithoutProtectionMap.getOrDefault(key, PriceStats.EMPTY);
+            ZScores relevantZScores = offer.hasProtectionPackage() ?
+                    zScoresWithProtectionMap.getOrDefault(key, ZScores.NONE) :
+                    zScoresWithoutProtectionMap.getOrDefault(key, ZScores.NONE);
+            zScores[i] = relevantZScores.of(offer.getPrice());
+            trendAnalyses[i] = historyManager.analyzePriceTrend(offer.getModel(), offer.getStorageCapacity(), offer.hasProtectionPackage(), offer.getPrice());
+            assessments[i] = getRecommendationAssessment(offer.getPrice(), relevantStats, zScores[i], trendAnalyses[i]);
+            if (assessments[i].getStatus().startsWith("Świetna")) {
+                superbTotal++;
+            }
+        }
 
         System.out.println("\n" + title + ":");
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
@@ -892,23 +1293,21 @@ public class Main {
                 "Tytuł oferty", "Cena (PLN)", "Rekomendacja", "Data", "Lokalizacja", "Z-Score", "Cena sprzedaży", "Marża", "Trend cenowy", "URL");
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
 
-        for (Offer offer : sortedOutliers) {
-            String key = offer.getModel() + " " + offer.getStorageCapacity();
-            PriceStats relevantStats = offer.hasProtectionPackage() ?
-                    statsWithProtectionMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0)) :
-                    statsWithoutProtectionMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0));
-            Map<Offer, Double> relevantZScores = offer.hasProtectionPackage() ?
-                    zScoresWithProtectionMap.getOrDefault(key, new HashMap<>()) :
-                    zScoresWithoutProtectionMap.getOrDefault(key, new HashMap<>());
-            double sellingPrice = overallStatsMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0)).getPercentile25();
+        int superbShown = 0;
+        for (int index : order) {
+            Offer offer = lowPriceOutlierOffers.get(index);
+            double sellingPrice = overallStatsMap.getOrDefault(offer.getBucketId(), PriceStats.EMPTY).getPercentile25();
 
             String shortTitle = String.format("%s %s %s", offer.getModel(), offer.getStorageCapacity(), offer.getTitle());
             if (shortTitle.length() > 48) {
                 shortTitle = shortTitle.substring(0, 45) + "...";
             }
-            double zScore = relevantZScores.getOrDefault(offer, 0.0);
-            String trendAnalysis = historyManager.analyzePriceTrend(offer.getModel(), offer.getStorageCapacity(), offer.hasProtectionPackage(), offer.getPrice());
-            RecommendationAssessment assessment = getRecommendationAssessment(offer.getPrice(), relevantStats, zScore, trendAnalysis);
+            double zScore = zScores[index];
+            String trendAnalysis = trendAnalyses[index];
+            RecommendationAssessment assessment = assessments[index];
+            if (assessment.getStatus().startsWith("Świetna")) {
+                superbShown++;
+            }
 
             double purchasePrice = offer.getPrice();
             double totalCosts = purchasePrice + shippingCost + listingFee;
@@ -923,13 +1322,8 @@ public class Main {
 
             String locationDisplay = offer.getLocation().isEmpty() ? "Cała Polska" : offer.getLocation();
             if (!offer.getLocation().isEmpty()) {
-                double[] offerCoordinates = distanceCalculator.getCoordinates(offer.getLocation());
-                if (offerCoordinates != null) {
-                    double distance = distanceCalculator.calculateHaversineDistance(
-                            SOCHACZEW_LAT, SOCHACZEW_LON,
-                            offerCoordinates[0], offerCoordinates[1]
-                    );
-                    locationDisplay = String.format("%s (%.2f km)", offer.getLocation(), distance);
+                if (nearestDepots[index] >= 0) {
+                    locationDisplay = String.format("%s (%.2f km)", offer.getLocation(), depotDistances[index]);
                 } else {
                     locationDisplay = offer.getLocation() + " (Brak danych)";
                 }
@@ -944,36 +1338,58 @@ public class Main {
                     locationDisplay, zScore, sellingPrice, marginText, trendAnalysis, offer.getUrl());
         }
         System.out.println("+--------------------------------------------------+------------+---------------------+------------------------+-------------------------+---------+-----------------+-------------------+----------------------------+------------------------------------------------------------------------------------------------------------------------------------------------+");
+        printRankingFooter(order.length, n);
         System.out.println("----------------------------------------");
+        return new SuperbCount(superbShown, superbTotal);
     }
 
-    private static void promptOpenOffers(List<Offer> recommendedWithout, List<Offer> recommendedWith,
-                                         List<Offer> lowPriceOutlierOffers, Map<String, PriceStats> statsWithoutProtectionMap,
-                                         Map<String, PriceStats> statsWithProtectionMap, Map<String, Map<Offer, Double>> zScoresWithoutProtectionMap,
-                                         Map<String, Map<Offer, Double>> zScoresWithProtectionMap, PriceHistoryManager historyManager,
-                                         Scanner scanner) {
-        // Filter offers with "Świetna" recommendation from low price outliers
-        List<Offer> superbOutliers = lowPriceOutlierOffers.stream()
-                .filter(offer -> {
-                    String key = offer.getModel() + " " + offer.getStorageCapacity();
-                    PriceStats relevantStats = offer.hasProtectionPackage() ?
-                            statsWithProtectionMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0)) :
-                            statsWithoutProtectionMap.getOrDefault(key, new PriceStats(0, 0, 0, 0, 0));
-                    Map<Offer, Double> relevantZScores = offer.hasProtectionPackage() ?
-                            zScoresWithProtectionMap.getOrDefault(key, new HashMap<>()) :
-                            zScoresWithoutProtectionMap.getOrDefault(key, new HashMap<>());
-                    double zScore = relevantZScores.getOrDefault(offer, 0.0);
-                    String trendAnalysis = historyManager.analyzePriceTrend(offer.getModel(), offer.getStorageCapacity(), offer.hasProtectionPackage(), offer.getPrice());
-                    RecommendationAssessment assessment = getRecommendationAssessment(offer.getPrice(), relevantStats, zScore, trendAnalysis);
-                    return assessment.getStatus().startsWith("Świetna");
-                })
-                .collect(Collectors.toList());
+    // Współrzędne z cache’a/słownika zebrane do tablic i przeliczone wsadowo względem wszystkich punktów odbioru
+    private static void computeNearestDepots(List<Offer> offers, DistanceCalculator distanceCalculator, DepotConfig depots,
+                                             double[] depotDistances, int[] nearestDepots) {
+        int n = offers.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            double[] coordinates = distanceCalculator.getCachedCoordinates(offers.get(i).getLocation());
+            lats[i] = coordinates != null ? coordinates[0] : Double.NaN;
+            lons[i] = coordinates != null ? coordinates[1] : Double.NaN;
+        }
+        distanceCalculator.nearestOrigins(lats, lons, depots.getLatitudes(), depots.getLongitudes(), depotDistances, nearestDepots);
+    }
+
+    // Wynik liczony raz dla każdej oferty (marża minus koszt dojazdu do najbliższego punktu odbioru);
+    // zamiast sortować całą listę zachowujemy tylko RANKING_TOP_K najlepszych (indeksy malejąco według wyniku)
+    private static int[] rankByScore(List<Offer> offers, double[] depotDistances, double costPerKm,
+                                     BucketTable<PriceStats> overallStatsMap, double shippingCost, double listingFee) {
+        TopK best = new TopK(Math.min(RANKING_TOP_K, offers.size()));
+        for (int i = 0; i < offers.size(); i++) {
+            Offer offer = offers.get(i);
+            double sellingPrice = overallStatsMap.getOrDefault(offer.getBucketId(), PriceStats.EMPTY).getPercentile25();
+            double travelCost = Double.isNaN(depotDistances[i]) ? 0.0 : depotDistances[i] * costPerKm;
+            best.offer(i, sellingPrice - (offer.getPrice() + shippingCost + listingFee) - travelCost);
+        }
+        return best.drainDescending();
+    }
 
-        // Informacja o ofertach z rekomendacją "Świetna"
-        if (superbOutliers.isEmpty()) {
+    private static void printRankingFooter(int shown, int total) {
+        if (shown < total) {
+            System.out.printf("Pokazano %d najlepszych z %d ofert (limit -Dranking.topK=%d)\n", shown, total, RANKING_TOP_K);
+        }
+    }
+
+    private static void promptOpenOffers(SuperbCount superb) {
+        // Informacja o ofertach z rekomendacją "Świetna"; tabela pokazuje tylko RANKING_TOP_K najlepszych,
+        // więc pozostałe są jedynie zliczane
+        int superbOmitted = superb.total - superb.shown;
+        if (superb.total == 0) {
             System.out.println("\nBrak ofert z rekomendacją 'Świetna' w tabeli 'Podejrzane tanie oferty'.");
+        } else if (superb.shown == 0) {
+            System.out.printf("\nZnaleziono %d ofert z rekomendacją 'Świetna', ale żadna nie zmieściła się w tabeli 'Podejrzane tanie oferty' (limit -Dranking.topK=%d).\n", superb.total, RANKING_TOP_K);
         } else {
-            System.out.printf("\nZnaleziono %d ofert z rekomendacją 'Świetna' w tabeli 'Podejrzane tanie oferty'. Sprawdź szczegóły i linki w tabeli powyżej.\n", superbOutliers.size());
+            System.out.printf("\nZnaleziono %d ofert z rekomendacją 'Świetna' w tabeli 'Podejrzane tanie oferty'. Sprawdź szczegóły i linki w tabeli powyżej.\n", superb.shown);
+            if (superbOmitted > 0) {
+                System.out.printf("Kolejne %d ofert z rekomendacją 'Świetna' nie zmieściło się w tabeli (limit -Dranking.topK=%d).\n", superbOmitted, RANKING_TOP_K);
+            }
         }
     }
-}
\ No newline at end of file
+}
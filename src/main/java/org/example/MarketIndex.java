@@ -0,0 +1,267 @@
+package org.example;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Indeksy w pamięci dla API zapytań: historia cen pogrupowana według koszyka, pakietu ochronnego i dnia
+// oraz ostatni wynik skanowania każdej kombinacji. Zapytania okienkowe czytają tylko dni z okna.
+// Każda zmiana podbija numer generacji, po którym API unieważnia odpowiedzi z cache’a.
+public class MarketIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BucketTable<NavigableMap<Long, DayPrices>> historyWithProtection = new BucketTable<>();
+    private final BucketTable<NavigableMap<Long, DayPrices>> historyWithoutProtection = new BucketTable<>();
+    private final BucketTable<ScanSnapshot> scans = new BucketTable<>();
+    private final Map<String, Integer> buckets = new HashMap<>(); // "model pojemność" małymi literami -> koszyk
+    private final AtomicLong generation = new AtomicLong();
+    private int records;
+
+    // Ceny jednego dnia (nieposortowane, sortowane przy zapytaniu)
+    private static final class DayPrices {
+        private double[] prices = new double[4];
+        private int size;
+
+        private void add(double price) {
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            prices[size++] = price;
+        }
+    }
+
+    public static final class DaySummary {
+        public final LocalDate date;
+        public final int count;
+        public final double min;
+        public final double median;
+        public final double max;
+
+        private DaySummary(LocalDate date, int count, double min, double median, double max) {
+            this.date = date;
+            this.count = count;
+            this.min = min;
+            this.median = median;
+            this.max = max;
+        }
+    }
+
+    // Oferta z tabeli rekomendacji ostatniego skanowania wraz z wyliczonymi wskaźnikami
+    public static final class Deal {
+        public final String table;
+        public final Offer offer;
+        public final double zScore;
+        public final double sellingPrice;
+        public final double margin;
+
+        public Deal(String table, Offer offer, double zScore, double sellingPrice, double margin) {
+            this.table = table;
+            this.offer = offer;
+            this.zScore = zScore;
+            this.sellingPrice = sellingPrice;
+            this.margin = margin;
+        }
+    }
+
+    public static final class ScanSnapshot {
+        public final String model;
+        public final String storage;
+        public final Instant scannedAt;
+        public final int offers;
+        public final PriceStats overallStats;
+        public final PriceStats statsWithProtection;
+        public final PriceStats statsWithoutProtection;
+        public final List<Deal> deals;
+
+        public ScanSnapshot(String model, String storage, int offers, PriceStats overallStats,
+                            PriceStats statsWithProtection, PriceStats statsWithoutProtection, List<Deal> deals) {
+            this.model = model;
+            this.storage = storage;
+            this.scannedAt = Instant.now();
+            this.offers = offers;
+            this.overallStats = overallStats;
+            this.statsWithProtection = statsWithProtection;
+            this.statsWithoutProtection = statsWithoutProtection;
+            this.deals = deals;
+        }
+    }
+
+    public void addRecords(List<PriceHistoryManager.PriceRecord> history) {
+        lock.writeLock().lock();
+        try {
+            for (PriceHistoryManager.PriceRecord record : history) {
+                add(OfferBuckets.idOf(record.getModel(), record.getStorageCapacity()), record.hasProtectionPackage(),
+                        record.getDate().toEpochDay(), record.getPrice());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        generation.incrementAndGet();
+    }
+
+    // Dopisuje ceny właśnie zapisane do historii (bez ponownego odczytu pliku)
+    public void addPrices(OfferBatch offers) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < offers.size(); i++) {
+                add(offers.bucketId(i), offers.hasProtectionPackage(i), offers.epochDay(i), offers.price(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        generation.incrementAndGet();
+    }
+
+    // Ceny <= 0 pomijane tak jak w analizie trendu
+    private void add(int bucketId, boolean protection, long epochDay, double price) {
+        if (price <= 0) {
+            return;
+        }
+        BucketTable<NavigableMap<Long, DayPrices>> history = protection ? historyWithProtection : historyWithoutProtection;
+        NavigableMap<Long, DayPrices> days = history.get(bucketId);
+        if (days == null) {
+            days = new TreeMap<>();
+            history.put(bucketId, days);
+            buckets.putIfAbsent(OfferBuckets.keyOf(bucketId).toLowerCase(Locale.ROOT), bucketId);
+        }
+        days.computeIfAbsent(epochDay, day -> new DayPrices()).add(price);
+        records++;
+    }
+
+    public void publishScan(ScanSnapshot snapshot) {
+        int bucketId = OfferBuckets.idOf(snapshot.model, snapshot.storage);
+        lock.writeLock().lock();
+        try {
+            scans.put(bucketId, snapshot);
+            buckets.putIfAbsent(OfferBuckets.keyOf(bucketId).toLowerCase(Locale.ROOT), bucketId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        generation.incrementAndGet();
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public int recordCount() {
+        lock.readLock().lock();
+        try {
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Koszyk bez względu na wielkość liter; -1, gdy kombinacja nie występuje ani w historii, ani w skanowaniach
+    // (zapytania o nieznane nazwy nie tworzą nowych koszyków)
+    public int bucketOf(String model, String storage) {
+        lock.readLock().lock();
+        try {
+            return buckets.getOrDefault((model.trim() + " " + storage.trim()).toLowerCase(Locale.ROOT), -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Posortowane ceny z dni [from, to]
+    public double[] windowPrices(int bucketId, boolean protection, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            NavigableMap<Long, DayPrices> days = (protection ? historyWithProtection : historyWithoutProtection).get(bucketId);
+            if (days == null) {
+                return new double[0];
+            }
+            NavigableMap<Long, DayPrices> window = days.subMap(from.toEpochDay(), true, to.toEpochDay(), true);
+            int total = 0;
+            for (DayPrices day : window.values()) {
+                total += day.size;
+            }
+            double[] prices = new double[total];
+            int offset = 0;
+            for (DayPrices day : window.values()) {
+                System.arraycopy(day.prices, 0, prices, offset, day.size);
+                offset += day.size;
+            }
+            Arrays.sort(prices);
+            return prices;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<DaySummary> daily(int bucketId, boolean protection, LocalDate from, LocalDate to) {
+        List<DaySummary> summaries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            NavigableMap<Long, DayPrices> days = (protection ? historyWithProtection : historyWithoutProtection).get(bucketId);
+            if (days == null) {
+                return summaries;
+            }
+            for (Map.Entry<Long, DayPrices> entry : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).entrySet()) {
+                DayPrices day = entry.getValue();
+                double[] prices = Arrays.copyOf(day.prices, day.size);
+                Arrays.sort(prices);
+                summaries.add(new DaySummary(LocalDate.ofEpochDay(entry.getKey()), prices.length, prices[0],
+                        PriceAnalyzer.calculatePercentile(prices, prices.length, 0.5), prices[prices.length - 1]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return summaries;
+    }
+
+    public ScanSnapshot lastScan(int bucketId) {
+        lock.readLock().lock();
+        try {
+            return scans.get(bucketId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ScanSnapshot> lastScans() {
+        List<ScanSnapshot> snapshots = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int bucketId : buckets.values()) {
+                ScanSnapshot snapshot = scans.get(bucketId);
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return snapshots;
+    }
+
+    // Statystyki okna historii (bez odcinania wartości odstających – historia zawiera już tylko ceny > 0)
+    public static PriceStats stats(double[] sortedPrices) {
+        int n = sortedPrices.length;
+        if (n == 0) {
+            return PriceStats.EMPTY;
+        }
+        double sum = 0.0;
+        for (double price : sortedPrices) {
+            sum += price;
+        }
+        double average = sum / n;
+        double squaredDeviations = 0.0;
+        for (double price : sortedPrices) {
+            squaredDeviations += (price - average) * (price - average);
+        }
+        return new PriceStats(average, Math.sqrt(squaredDeviations / n),
+                PriceAnalyzer.calculatePercentile(sortedPrices, n, 0.25),
+                PriceAnalyzer.calculatePercentile(sortedPrices, n, 0.50),
+                PriceAnalyzer.calculatePercentile(sortedPrices, n, 0.75));
+    }
+}
@@ -0,0 +1,203 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Liczniki i histogramy czasów dla ścieżki scrapowania; eksport w formacie tekstowym Prometheus
+// (endpoint /metrics przy -Dmetrics.port=... oraz plik metrics.prom na koniec działania programu)
+public final class Metrics {
+    private static final String DUMP_FILE = "metrics.prom";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, String> HELP = new ConcurrentHashMap<>();
+    private static final Map<String, String> TYPES = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private Metrics() {
+    }
+
+    // Licznik bez etykiet
+    public static void increment(String name, String help) {
+        increment(name, help, "");
+    }
+
+    // Licznik z etykietami w formacie Prometheus, np. reason="invalid_price"
+    public static void increment(String name, String help, String labels) {
+        register(name, help, "counter");
+        COUNTERS.computeIfAbsent(seriesKey(name, labels), key -> new AtomicLong()).incrementAndGet();
+    }
+
+    public static void recordNanos(String name, String help, long nanos) {
+        recordNanos(name, help, "", nanos);
+    }
+
+    // Czas operacji (w nanosekundach); eksportowany w sekundach jako summary z kwantylami
+    public static void recordNanos(String name, String help, String labels, long nanos) {
+        register(name, help, "summary");
+        HISTOGRAMS.computeIfAbsent(seriesKey(name, labels), key -> new Histogram()).record(nanos);
+    }
+
+    private static void register(String name, String help, String type) {
+        HELP.putIfAbsent(name, help);
+        TYPES.putIfAbsent(name, type);
+    }
+
+    private static String seriesKey(String name, String labels) {
+        return labels.isEmpty() ? name : name + "{" + labels + "}";
+    }
+
+    private static String metricName(String seriesKey) {
+        int brace = seriesKey.indexOf('{');
+        return brace < 0 ? seriesKey : seriesKey.substring(0, brace);
+    }
+
+    private static String labels(String seriesKey) {
+        int brace = seriesKey.indexOf('{');
+        return brace < 0 ? "" : seriesKey.substring(brace + 1, seriesKey.length() - 1);
+    }
+
+    // Wszystkie metryki w formacie tekstowym Prometheus (wersja 0.0.4)
+    public static String toPrometheus() {
+        Map<String, StringBuilder> byName = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(COUNTERS).entrySet()) {
+            byName.computeIfAbsent(metricName(entry.getKey()), name -> new StringBuilder())
+                    .append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(HISTOGRAMS).entrySet()) {
+            String name = metricName(entry.getKey());
+            String labels = labels(entry.getKey());
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            Histogram histogram = entry.getValue();
+            StringBuilder lines = byName.computeIfAbsent(name, key -> new StringBuilder());
+            for (double quantile : QUANTILES) {
+                lines.append(String.format(Locale.ROOT, "%s{%squantile=\"%s\"} %.6f\n",
+                        name, prefix, quantile, histogram.valueAtQuantile(quantile) / 1e9));
+            }
+            String suffixLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+            lines.append(String.format(Locale.ROOT, "%s_sum%s %.6f\n", name, suffixLabels, histogram.sumNanos() / 1e9));
+            lines.append(String.format(Locale.ROOT, "%s_count%s %d\n", name, suffixLabels, histogram.count()));
+        }
+
+        StringBuilder output = new StringBuilder();
+        for (Map.Entry<String, StringBuilder> entry : byName.entrySet()) {
+            output.append("# HELP ").append(entry.getKey()).append(' ').append(HELP.get(entry.getKey())).append('\n');
+            output.append("# TYPE ").append(entry.getKey()).append(' ').append(TYPES.get(entry.getKey())).append('\n');
+            output.append(entry.getValue());
+        }
+        return output.toString();
+    }
+
+    // Uruchamia endpoint /metrics, jeśli podano -Dmetrics.port
+    public static synchronized void startServerIfConfigured() {
+        Integer port = Integer.getInteger("metrics.port");
+        if (port == null || server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            });
+            server.start();
+            Log.info("metrics.server", "Metryki dostępne pod adresem http://127.0.0.1:" + port + "/metrics", "port", port);
+        } catch (IOException e) {
+            System.err.println("Nie udało się uruchomić endpointu metryk: " + e.getMessage());
+        }
+    }
+
+    // Zapisuje metryki do pliku i zatrzymuje endpoint
+    public static synchronized void dump() {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(DUMP_FILE, StandardCharsets.UTF_8))) {
+            writer.write(toPrometheus());
+        } catch (IOException e) {
+            System.err.println("Błąd podczas zapisu metryk: " + e.getMessage());
+        }
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Histogram o stałej względnej dokładności (ok. 3%, w stylu HDR): 32 przedziały liniowe na każdą potęgę dwójki.
+    // Wartości w mikrosekundach, zapis bez blokad.
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int MAX_EXPONENT = 42; // ok. 50 dni w mikrosekundach
+        private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(nanos, 0) / 1000;
+            counts.incrementAndGet(indexOf(micros));
+            count.incrementAndGet();
+            sumNanos.addAndGet(Math.max(nanos, 0));
+        }
+
+        private static int indexOf(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+            int shift = exponent - SUB_BUCKET_BITS;
+            int subBucket = (int) Math.min((micros >>> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+        }
+
+        // Środek przedziału w mikrosekundach
+        private static double valueOf(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+            int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+            long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+            return lower + ((1L << shift) - 1) / 2.0;
+        }
+
+        // Wartość kwantyla w nanosekundach
+        double valueAtQuantile(double quantile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return valueOf(i) * 1000.0;
+                }
+            }
+            return valueOf(counts.length() - 1) * 1000.0;
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        long sumNanos() {
+            return sumNanos.get();
+        }
+    }
+}
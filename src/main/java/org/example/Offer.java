@@ -1,8 +1,12 @@
 package org.example;
 
 import java.time.LocalDate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Offer {
+    private static final Pattern AD_ID_PATTERN = Pattern.compile("-(ID[0-9A-Za-z]+)\\.html");
+
     private final String title;
     private final double price;
     private final String url;
@@ -12,6 +16,8 @@ public class Offer {
     private final boolean hasProtectionPackage;
     private final String model;
     private final String storageCapacity;
+    private final String adId; // Stabilny identyfikator ogłoszenia OLX
+    private final int bucketId; // Zinternowany identyfikator pary model + pojemność
 
     public Offer(String title, double price, String url, LocalDate date, String dateStatus, String location, boolean hasProtectionPackage, String model, String storageCapacity) {
         this.title = title;
@@ -23,6 +29,29 @@ public class Offer {
         this.hasProtectionPackage = hasProtectionPackage;
         this.model = model != null ? model : "Nieznany";
         this.storageCapacity = storageCapacity != null ? storageCapacity : "Nieznana";
+        this.adId = extractAdId(url);
+        this.bucketId = OfferBuckets.idOf(this.model, this.storageCapacity);
+    }
+
+    // Wyciąga identyfikator ogłoszenia z URL (np. ...-IDXyZ12.html), w przeciwnym razie URL bez parametrów
+    static String extractAdId(String url) {
+        if (url == null) {
+            return "";
+        }
+        Matcher matcher = AD_ID_PATTERN.matcher(url);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        int end = url.length();
+        int queryIndex = url.indexOf('?');
+        if (queryIndex >= 0) {
+            end = queryIndex;
+        }
+        int fragmentIndex = url.indexOf('#');
+        if (fragmentIndex >= 0 && fragmentIndex < end) {
+            end = fragmentIndex;
+        }
+        return url.substring(0, end);
     }
 
     public String getTitle() {
@@ -60,4 +89,29 @@ public class Offer {
     public String getStorageCapacity() {
         return storageCapacity;
     }
+
+    public String getAdId() {
+        return adId;
+    }
+
+    public int getBucketId() {
+        return bucketId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Offer)) {
+            return false;
+        }
+        Offer other = (Offer) o;
+        return bucketId == other.bucketId && adId.equals(other.adId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * adId.hashCode() + bucketId;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,192 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+// Kolumnowa reprezentacja ofert dla ścieżki analizy; obiekty Offer tworzone są tylko do wyświetlania
+public class OfferBatch {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private double[] prices;
+    private int[] epochDays;
+    private int[] bucketIds;
+    private int[] locationIds;
+    private final BitSet protection = new BitSet();
+    private String[] titles;
+    private String[] urls;
+    private String[] dateStatuses;
+    private int size;
+
+    // Słownik lokalizacji: identyfikator -> nazwa miasta
+    private final List<String> locations = new ArrayList<>();
+    private final Map<String, Integer> locationIndex = new HashMap<>();
+
+    public OfferBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public OfferBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        prices = new double[capacity];
+        epochDays = new int[capacity];
+        bucketIds = new int[capacity];
+        locationIds = new int[capacity];
+        titles = new String[capacity];
+        urls = new String[capacity];
+        dateStatuses = new String[capacity];
+    }
+
+    public static OfferBatch fromOffers(List<Offer> offers) {
+        OfferBatch batch = new OfferBatch(offers.size());
+        for (Offer offer : offers) {
+            batch.add(offer.getTitle(), offer.getPrice(), offer.getUrl(), offer.getDate(), offer.getDateStatus(),
+                    offer.getLocation(), offer.hasProtectionPackage(), offer.getBucketId());
+        }
+        return batch;
+    }
+
+    public void add(String title, double price, String url, LocalDate date, String dateStatus, String location,
+                    boolean hasProtectionPackage, int bucketId) {
+        ensureCapacity(size + 1);
+        prices[size] = price;
+        epochDays[size] = (int) date.toEpochDay();
+        bucketIds[size] = bucketId;
+        locationIds[size] = locationId(location);
+        protection.set(size, hasProtectionPackage);
+        titles[size] = title;
+        urls[size] = url;
+        dateStatuses[size] = dateStatus != null ? dateStatus : "";
+        size++;
+    }
+
+    // Dołącza wszystkie wiersze innej partii (np. wyniki kolejnej strony)
+    public void addAll(OfferBatch other) {
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            prices[size] = other.prices[i];
+            epochDays[size] = other.epochDays[i];
+            bucketIds[size] = other.bucketIds[i];
+            locationIds[size] = locationId(other.location(i));
+            protection.set(size, other.protection.get(i));
+            titles[size] = other.titles[i];
+            urls[size] = other.urls[i];
+            dateStatuses[size] = other.dateStatuses[i];
+            size++;
+        }
+    }
+
+    // Zwraca nową partię zawierającą tylko oferty z podanego dnia
+    public OfferBatch filterByDay(LocalDate day) {
+        int epochDay = (int) day.toEpochDay();
+        return filter(row -> epochDays[row] == epochDay);
+    }
+
+    // Zwraca nową partię z wierszami spełniającymi warunek
+    public OfferBatch filter(IntPredicate rowPredicate) {
+        OfferBatch result = new OfferBatch();
+        for (int i = 0; i < size; i++) {
+            if (rowPredicate.test(i)) {
+                result.add(titles[i], prices[i], urls[i], LocalDate.ofEpochDay(epochDays[i]), dateStatuses[i],
+                        location(i), protection.get(i), bucketIds[i]);
+            }
+        }
+        return result;
+    }
+
+    public int countOnDay(LocalDate day) {
+        int epochDay = (int) day.toEpochDay();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (epochDays[i] == epochDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int locationId(String location) {
+        String key = location != null ? location : "";
+        Integer id = locationIndex.get(key);
+        if (id == null) {
+            id = locations.size();
+            locations.add(key);
+            locationIndex.put(key, id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= prices.length) {
+            return;
+        }
+        int capacity = Math.max(required, prices.length * 2);
+        prices = Arrays.copyOf(prices, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        bucketIds = Arrays.copyOf(bucketIds, capacity);
+        locationIds = Arrays.copyOf(locationIds, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+        urls = Arrays.copyOf(urls, capacity);
+        dateStatuses = Arrays.copyOf(dateStatuses, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double price(int row) {
+        return prices[row];
+    }
+
+    public int epochDay(int row) {
+        return epochDays[row];
+    }
+
+    public boolean hasProtectionPackage(int row) {
+        return protection.get(row);
+    }
+
+    public int bucketId(int row) {
+        return bucketIds[row];
+    }
+
+    public int locationId(int row) {
+        return locationIds[row];
+    }
+
+    public String location(int row) {
+        return locations.get(locationIds[row]);
+    }
+
+    public String url(int row) {
+        return urls[row];
+    }
+
+    // Słownik lokalizacji; indeks odpowiada wartości locationId(row)
+    public List<String> locationDictionary() {
+        return locations;
+    }
+
+    // Tworzy widok Offer dla pojedynczego wiersza (tylko na potrzeby wyświetlania)
+    public Offer offer(int row) {
+        return new Offer(titles[row], prices[row], urls[row], LocalDate.ofEpochDay(epochDays[row]), dateStatuses[row],
+                location(row), protection.get(row), OfferBuckets.modelOf(bucketIds[row]), OfferBuckets.storageOf(bucketIds[row]));
+    }
+
+    public List<Offer> toOffers() {
+        List<Offer> offers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            offers.add(offer(i));
+        }
+        return offers;
+    }
+}
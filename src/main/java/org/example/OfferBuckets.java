@@ -0,0 +1,51 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Internuje pary model + pojemność do zwartych identyfikatorów int (indeksy w tablicach pomocniczych).
+// Odczyt istniejącego identyfikatora i odwrotne wyszukiwanie nie biorą blokady; blokowane jest tylko tworzenie nowego koszyka.
+public final class OfferBuckets {
+    private record Key(String model, String storageCapacity) {
+    }
+
+    private static final Map<Key, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile Key[] keys = new Key[0]; // Kopiowana przy dopisaniu (copy-on-write), indeks = identyfikator
+
+    private OfferBuckets() {
+    }
+
+    // Zwraca identyfikator koszyka, tworząc go przy pierwszym użyciu
+    public static int idOf(String model, String storageCapacity) {
+        Key key = new Key(model, storageCapacity);
+        Integer id = IDS.get(key);
+        return id != null ? id : IDS.computeIfAbsent(key, OfferBuckets::register);
+    }
+
+    // Tablica odwrotna publikowana przed zwróceniem identyfikatora, więc modelOf(idOf(...)) zawsze go widzi
+    private static synchronized Integer register(Key key) {
+        Key[] current = keys;
+        Key[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = key;
+        keys = extended;
+        return current.length;
+    }
+
+    public static String modelOf(int id) {
+        return keys[id].model();
+    }
+
+    public static String storageOf(int id) {
+        return keys[id].storageCapacity();
+    }
+
+    public static String keyOf(int id) {
+        Key key = keys[id];
+        return key.model() + " " + key.storageCapacity();
+    }
+
+    public static int size() {
+        return keys.length;
+    }
+}
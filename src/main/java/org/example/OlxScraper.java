@@ -3,6 +3,8 @@ package org.example;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Range;
+import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
 
 import java.io.IOException;
@@ -10,22 +12,36 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class OlxScraper {
+    // Adres serwisu; -Dolx.baseUrl=http://localhost:8089 kieruje scraper na lokalny serwer replay
+    private static final String OLX_BASE_URL = System.getProperty("olx.baseUrl", "https://www.olx.pl");
+    private static final String SEARCH_PATH = "/elektronika/telefony/smartfony-telefony-komorkowe/";
+
     // CSS Selectors as constants
-    private static final String OFFER_CONTAINER_SELECTOR = "div.css-1sw7q4x";
+    static final String OFFER_CONTAINER_SELECTOR = "div.css-1sw7q4x"; // Widoczne w pakiecie (benchmarki)
     private static final String TITLE_SELECTOR = "h4.css-1g61gc2";
     private static final String PRICE_SELECTOR = "p[data-testid=ad-price]";
     private static final String LINK_SELECTOR = "a.css-1tqlkj0";
@@ -42,30 +58,59 @@ public class OlxScraper {
     private static final int MAX_REQUEST_DELAY_MS = 5000; // Maksymalne opóźnienie
     private static final int MIN_REQUEST_DELAY_MS = 1000; // Minimalne opóźnienie
     private static final int MAX_RETRIES = 3; // Maksymalna liczba prób dla żądań z ograniczeniem szybkości
-    private static final int RETRY_DELAY_MS = 5000; // Opóźnienie między próbami
+    private static final long RETRY_BASE_DELAY_MS = 2000; // Bazowe opóźnienie ponowienia (podwajane przy kolejnych próbach)
+    private static final long MAX_RETRY_DELAY_MS = 30000; // Górna granica opóźnienia z backoffu
+    private static final long MAX_RETRY_AFTER_MS = 60000; // Górna granica respektowanego nagłówka Retry-After
     private static int CONCURRENT_PAGES = 6; // Początkowa liczba stron pobieranych równolegle (zmienne)
     private static final int MIN_CONCURRENT_PAGES = 3; // Minimalna liczba stron
+    private static final CardCache CARD_CACHE = new CardCache(); // Sparsowane karty współdzielone przez kolejne skanowania
+    private static final int OFFER_LOG_SAMPLE = 100; // Diagnostyka pojedynczych ofert: co które wystąpienie trafia do dziennika
     private static ExecutorService EXECUTOR = Executors.newFixedThreadPool(CONCURRENT_PAGES); // Pula wątków dla zadań asynchronicznych
+    // Podział wyszukiwania na przedziały cen (-Dolx.priceSharding=false wyłącza)
+    private static final boolean PRICE_SHARDING = Boolean.parseBoolean(System.getProperty("olx.priceSharding", "true"));
+    private static final String TOTAL_COUNT_SELECTOR = "span[data-testid=total-count]";
+    private static final Pattern TOTAL_COUNT_PATTERN = Pattern.compile("(\\d[\\d\\s\u00a0]*)");
+    private static final int MAX_OFFERS_PER_SHARD = 800; // Poniżej limitu paginacji OLX (25 stron)
+    private static final int MAX_SHARD_DEPTH = 6; // Najwyżej 64 przedziały na zapytanie
+    private static final int MIN_SHARD_WIDTH = 50; // Najwęższy przedział cen (zł)
+    private static final int SHARD_PRICE_CEILING = 4000; // Pierwszy podział zakresu otwartego
+    // Udział kart bez rozpoznanego modelu na pierwszej stronie zapytania wielomodelowego, powyżej którego
+    // modele skanowane są osobno (-Dolx.unassignedFallbackRatio)
+    private static final double UNASSIGNED_FALLBACK_RATIO = Double.parseDouble(System.getProperty("olx.unassignedFallbackRatio", "0.2"));
 
     public List<Offer> scrapeOffers(String model, String storageCapacity, String location, List<String> states) {
-        List<Offer> offers = new ArrayList<>();
-        String modelQuery;
+        return scrapeOfferBatch(model, storageCapacity, location, states).toOffers();
+    }
 
-        // Dodajemy specjalny wyjątek dla modelu "iPhone 16 Pro"
-        if (model.equalsIgnoreCase("iPhone 16 Pro")) {
-            modelQuery = "16pro"; // Ustawiamy sztywno wymaganą wartość bez myślnika
-        } else {
-            // Dla wszystkich innych modeli stosujemy dotychczasową logikę
-            modelQuery = model.toLowerCase().replaceAll("iphone\\s*", "").replaceAll("\\s+", "-");
-        }
+    // Pobiera oferty bezpośrednio do reprezentacji kolumnowej (bez tworzenia obiektów Offer)
+    public OfferBatch scrapeOfferBatch(String model, String storageCapacity, String location, List<String> states) {
+        QueryPlanner.Query query = new QueryPlanner.Query(Collections.singletonList(model), storageCapacity);
+        return scrapeQuery(query, location, states).getOrDefault(query.getBucketIds()[0], new OfferBatch());
+    }
 
-        String storageQuery = storageCapacity.toLowerCase().replace("tb", "tb").replace("gb", "gb");
+    public BucketTable<OfferBatch> scrapeQuery(QueryPlanner.Query query, String location, List<String> states) {
+        return scrapeQuery(query, location, states, ScanScope.unbounded("query"));
+    }
+
+    // Jedno wyszukiwanie dla kilku modeli naraz; oferty rozdzielane są do koszyków model + pojemność.
+    // Po anulowaniu zakresu (lub upływie jego terminu) kolejne strony nie są pobierane, trwające pobrania
+    // są przerywane, a wynik zawiera oferty ze stron ukończonych wcześniej.
+    public BucketTable<OfferBatch> scrapeQuery(QueryPlanner.Query query, String location, List<String> states, ScanScope scope) {
+        String storageQuery = query.getStorage().toLowerCase();
         String baseUrl;
 
-        // Budowanie parametrów filtra
+        // Budowanie parametrów filtra (kolejne modele jako kolejne indeksy, jak w przypadku stanów)
         StringBuilder filters = new StringBuilder();
-        filters.append("search%5Bfilter_enum_phonemodel%5D%5B0%5D=iphone-")
-                .append(URLEncoder.encode(modelQuery, StandardCharsets.UTF_8));
+        List<String> models = query.getModels();
+        for (int i = 0; i < models.size(); i++) {
+            if (i > 0) {
+                filters.append("&");
+            }
+            filters.append("search%5Bfilter_enum_phonemodel%5D%5B")
+                    .append(i)
+                    .append("%5D=iphone-")
+                    .append(URLEncoder.encode(modelSlug(models.get(i)), StandardCharsets.UTF_8));
+        }
         filters.append("&search%5Bfilter_enum_builtinmemory_phones%5D%5B0%5D=")
                 .append(URLEncoder.encode(storageQuery, StandardCharsets.UTF_8));
 
@@ -75,7 +120,7 @@ public class OlxScraper {
         }
 
         // Dodanie parametrów stanu
-        System.out.println("Przekazane stany: " + (states != null ? states : "null"));
+        Log.debug("search.states", "Przekazane stany: " + states, "states", states != null ? states.toString() : null);
         if (states != null && !states.isEmpty()) {
             for (int i = 0; i < states.size(); i++) {
                 filters.append("&search%5Bfilter_enum_state%5D%5B")
@@ -88,17 +133,153 @@ public class OlxScraper {
         // Budowanie pełnego URL
         if (location != null && !location.isEmpty()) {
             String locationSlug = location.trim().toLowerCase().replaceAll("\\s+", "-");
-            baseUrl = "https://www.olx.pl/elektronika/telefony/smartfony-telefony-komorkowe/" +
+            baseUrl = OLX_BASE_URL + SEARCH_PATH +
                     URLEncoder.encode(locationSlug, StandardCharsets.UTF_8) + "/q-iphone/?" + filters;
         } else {
-            baseUrl = "https://www.olx.pl/elektronika/telefony/smartfony-telefony-komorkowe/q-iphone/?" + filters;
+            baseUrl = OLX_BASE_URL + SEARCH_PATH + "q-iphone/?" + filters;
+        }
+
+        // Zapytanie wielomodelowe: pierwsza strona decyduje, czy tytuły wystarczają do przypisania ofert do modeli.
+        // Przy dużym udziale kart bez rozpoznanego modelu modele skanowane są osobno (filtr OLX jednoznacznie wyznacza
+        // wtedy model), zanim pobrane zostaną kolejne strony; w przeciwnym razie strona jest wykorzystana w skanowaniu.
+        FetchedPage firstPage = null;
+        if (models.size() > 1) {
+            try {
+                firstPage = scope.register(fetchAsync(baseUrl)).join();
+            } catch (CancellationException e) {
+                firstPage = null; // Zakres anulowany – skanowanie i tak się nie rozpocznie
+            }
+            double ratio = unassignedRatio(firstPage, query);
+            if (ratio > UNASSIGNED_FALLBACK_RATIO && !scope.isCancelled()) {
+                Metrics.increment("olx_query_fallback_total", "Zapytania wielomodelowe skanowane osobno dla każdego modelu");
+                Log.warn("search.fallback", String.format(Locale.ROOT, "Zapytanie %s %s: %.0f%% ofert na pierwszej stronie bez rozpoznanego modelu"
+                                + " – skanowanie osobno dla każdego modelu", models, query.getStorage(), ratio * 100),
+                        "models", models.toString(), "storage", query.getStorage(), "unassignedRatio", ratio);
+                BucketTable<OfferBatch> buckets = new BucketTable<>();
+                for (String model : models) {
+                    QueryPlanner.Query single = new QueryPlanner.Query(Collections.singletonList(model), query.getStorage());
+                    int bucketId = single.getBucketIds()[0];
+                    buckets.put(bucketId, scrapeQuery(single, location, states, scope).getOrDefault(bucketId, new OfferBatch()));
+                }
+                return buckets;
+            }
+        }
+
+        OfferBatch offers = PRICE_SHARDING ? crawlSharded(baseUrl, query, scope, firstPage) : crawl(baseUrl, query, scope, firstPage);
+
+        // Pojedyncze karty bez rozpoznanego modelu (poniżej progu) nie trafiają do żadnego koszyka – raportowane dla zapytania
+        int unassigned = query.getUnassigned();
+        if (unassigned > 0) {
+            Log.warn("search.unassigned", "Zapytanie " + models + " " + query.getStorage() + ": pominięto " + unassigned
+                            + " ofert bez rozpoznanego modelu w tytule",
+                    "models", models.toString(), "storage", query.getStorage(), "unassigned", unassigned, "offers", offers.size());
+        }
+
+        // Rozdzielenie wyników na koszyki zapytania
+        BucketTable<OfferBatch> buckets = new BucketTable<>();
+        for (int bucketId : query.getBucketIds()) {
+            buckets.put(bucketId, offers.filter(row -> offers.bucketId(row) == bucketId));
+        }
+        return buckets;
+    }
+
+    // Udział kart strony, których tytuł nie wskazuje żadnego modelu zapytania (0, gdy strony brak lub jest pusta)
+    private static double unassignedRatio(FetchedPage page, QueryPlanner.Query query) {
+        if (page == null) {
+            return 0;
+        }
+        Elements cards = page.getDocument().select(OFFER_CONTAINER_SELECTOR);
+        int unassigned = 0;
+        for (Element card : cards) {
+            Element title = card.selectFirst(TITLE_SELECTOR);
+            if (title != null && query.bucketOf(title.text().trim()) < 0) {
+                unassigned++;
+            }
+        }
+        return cards.isEmpty() ? 0 : (double) unassigned / cards.size();
+    }
+
+    // Wyniki głębokiego wyszukiwania (powyżej limitu paginacji OLX) dzielone są na rozłączne przedziały cen,
+    // dobierane adaptacyjnie na podstawie liczby wyników. Przedziały skanowane są kolejno, więc tempo zapytań do OLX
+    // (REQUEST_DELAY_MS między partiami stron) pozostaje takie jak przy pojedynczym wyszukiwaniu.
+    private OfferBatch crawlSharded(String baseUrl, QueryPlanner.Query query, ScanScope scope, FetchedPage firstPage) {
+        List<Shard> shards = planShards(baseUrl, PriceBand.ALL, 0, scope, firstPage).join();
+        if (shards.size() == 1) {
+            return crawl(baseUrl + shards.get(0).band().filter(), query, scope, shards.get(0).firstPage());
+        }
+        Log.info("search.sharded", "Podzielono wyszukiwanie na " + shards.size() + " przedziałów cen",
+                "shards", shards.size(), "bands", shards.stream().map(Shard::band).collect(Collectors.toList()).toString());
+
+        // Oferta z ceną równą granicy należy tylko do górnego przedziału; oferty zmieniające cenę w trakcie
+        // skanowania mogą pojawić się w dwóch przedziałach, więc duplikaty URL są pomijane
+        OfferBatch merged = new OfferBatch();
+        Set<String> seenUrls = new HashSet<>();
+        for (Shard shard : shards) {
+            if (scope.isCancelled()) {
+                break;
+            }
+            OfferBatch offers = crawl(baseUrl + shard.band().filter(), query, scope, shard.firstPage());
+            merged.addAll(offers.filter(row -> shard.band().contains(offers.price(row)) && seenUrls.add(offers.url(row))));
+        }
+        return merged;
+    }
+
+    // Dzieli przedział, dopóki liczba wyników przekracza MAX_OFFERS_PER_SHARD (sprawdzane pierwszą stroną przedziału).
+    // Pierwsza strona niedzielonego przedziału jest zachowywana i nie jest pobierana ponownie przy skanowaniu;
+    // prefetched to pierwsza strona przedziału pobrana już wcześniej (albo null).
+    private CompletableFuture<List<Shard>> planShards(String baseUrl, PriceBand band, int depth, ScanScope scope, FetchedPage prefetched) {
+        CompletableFuture<FetchedPage> probe = prefetched != null ? CompletableFuture.completedFuture(prefetched)
+                : scope.register(fetchAsync(baseUrl + band.filter()));
+        return probe
+                .handle((fetched, error) -> {
+                    // Nieudana próba (np. wyczerpane ponowienia po 429) przerywa planowanie zamiast udawać brak licznika;
+                    // po anulowaniu zakresu przedział zostaje niepodzielony, a skanowanie i tak się nie rozpocznie
+                    if (error != null && !scope.isCancelled()) {
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                    }
+                    return error == null ? fetched : null;
+                })
+                .thenCompose(fetched -> {
+                    int count = fetched != null ? totalCount(fetched.getDocument()) : -1;
+                    if (count < MAX_OFFERS_PER_SHARD || depth >= MAX_SHARD_DEPTH || !band.canSplit() || scope.isCancelled()) {
+                        return CompletableFuture.completedFuture(Collections.singletonList(new Shard(band, fetched)));
+                    }
+                    PriceBand[] halves = band.split();
+                    return planShards(baseUrl, halves[0], depth + 1, scope, null)
+                            .thenCombine(planShards(baseUrl, halves[1], depth + 1, scope, null), (lower, upper) -> {
+                                List<Shard> bands = new ArrayList<>(lower);
+                                bands.addAll(upper);
+                                return bands;
+                            });
+                });
+    }
+
+    // Łączna liczba ogłoszeń z nagłówka wyników ("Znaleźliśmy ponad 1000 ogłoszeń"); -1, gdy brak
+    static int totalCount(Document doc) {
+        Element counter = doc.selectFirst(TOTAL_COUNT_SELECTOR);
+        if (counter == null) {
+            return -1;
+        }
+        Matcher matcher = TOTAL_COUNT_PATTERN.matcher(counter.text());
+        if (!matcher.find()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(matcher.group(1).replaceAll("[\\s\u00a0]", ""));
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
 
+    // Przechodzi kolejne strony wyników (partiami po CONCURRENT_PAGES); firstPage to pierwsza strona pobrana
+    // już wcześniej (np. przy planowaniu przedziałów cen) albo null
+    private OfferBatch crawl(String baseUrl, QueryPlanner.Query query, ScanScope scope, FetchedPage firstPage) {
+        OfferBatch offers = new OfferBatch();
         int page = 1;
         boolean hasNextPage = true;
         List<CompletableFuture<PageResult>> futures = new ArrayList<>();
 
-        while (hasNextPage) {
+        while (hasNextPage && !scope.isCancelled()) {
             // Aktualizacja puli wątków, jeśli CONCURRENT_PAGES się zmieniło
             synchronized (OlxScraper.class) {
                 if (EXECUTOR.isShutdown() || EXECUTOR.isTerminated()) {
@@ -116,42 +297,55 @@ public class OlxScraper {
             futures.clear();
             for (int currentPage : pageBatch) {
                 String url = baseUrl + (currentPage > 1 ? "&page=" + currentPage : "");
-                System.out.println("Planuję pobieranie danych z URL (strona " + currentPage + "): " + url);
-                futures.add(CompletableFuture.supplyAsync(() -> {
-                    try {
-                        Document doc = fetchWithRetry(url);
-                        if (doc == null) {
-                            System.err.println("Nie udało się pobrać danych z URL po kilku próbach: " + url);
-                            return new PageResult(new ArrayList<>(), false);
+                Log.debug("page.planned", "Planuję pobieranie danych z URL (strona " + currentPage + ")", "page", currentPage, "url", url);
+                CompletableFuture<FetchedPage> fetch = currentPage == 1 && firstPage != null
+                        ? CompletableFuture.completedFuture(firstPage) : scope.register(fetchAsync(url));
+                futures.add(fetch.handle((fetched, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        if (cause instanceof CancellationException) {
+                            Log.debug("page.cancelled", "Anulowano pobieranie strony " + currentPage + " (zakres " + scope.getName() + ")",
+                                    "page", currentPage, "scope", scope.getName());
+                            return new PageResult(new OfferBatch(), false);
                         }
+                        String message = cause.getMessage();
+                        Log.warn("page.error", "Błąd podczas pobierania danych z URL: " + url + ", szczegóły: " + message, "url", url, "error", message);
+                        return new PageResult(new OfferBatch(), false);
+                    }
+                    if (fetched == null) {
+                        Log.warn("page.fetch_failed", "Nie udało się pobrać danych z URL: " + url, "page", currentPage, "url", url);
+                        return new PageResult(new OfferBatch(), false);
+                    }
 
+                    Document doc = fetched.getDocument();
+                    Elements offerElements = doc.select(OFFER_CONTAINER_SELECTOR);
 
+                    if (offerElements.isEmpty()) {
+                        Log.debug("page.empty", "Nie znaleziono ofert na stronie " + currentPage + ".", "page", currentPage);
+                        return new PageResult(new OfferBatch(), false);
+                    }
 
-
-                        Elements offerElements = doc.select(OFFER_CONTAINER_SELECTOR);
-
-                        if (offerElements.isEmpty()) {
-                            System.out.println("Nie znaleziono ofert na stronie " + currentPage + ".");
-                            return new PageResult(new ArrayList<>(), false);
-                        }
-
-                        System.out.println("Znaleziono " + offerElements.size() + " ofert na stronie " + currentPage);
-                        // Równoległe parsowanie ofert
-                        List<Offer> pageOffers = offerElements.stream()
-                                .parallel()
-                                .map(element -> parseOffer(element, model, storageCapacity))
-                                .filter(offer -> offer != null)
-                                .collect(Collectors.toList());
-
-                        // Sprawdzenie, czy istnieje następna strona
-                        boolean hasNext = doc.selectFirst(NEXT_PAGE_SELECTOR) != null;
-                        System.out.println("Czy jest następna strona po stronie " + currentPage + "? " + hasNext);
-                        return new PageResult(pageOffers, hasNext);
-                    } catch (IOException e) {
-                        System.err.println("Błąd podczas pobierania danych z URL: " + url + ", szczegóły: " + e.getMessage());
-                        return new PageResult(new ArrayList<>(), false);
+                    // Parsowanie ofert do partii strony (strony są już pobierane równolegle);
+                    // odrzucone karty raportowane są zbiorczo dla strony
+                    ScrapeEvents.PageParse parseEvent = new ScrapeEvents.PageParse();
+                    parseEvent.begin();
+                    OfferBatch pageOffers = new OfferBatch(offerElements.size());
+                    for (Element element : offerElements) {
+                        parseOffer(element, fetched.getHtml(), query, pageOffers);
                     }
-                }, EXECUTOR));
+                    parseEvent.page = currentPage;
+                    parseEvent.cards = offerElements.size();
+                    parseEvent.parsed = pageOffers.size();
+                    parseEvent.commit();
+                    Log.debug("page.parsed", "Znaleziono " + offerElements.size() + " ofert na stronie " + currentPage,
+                            "page", currentPage, "cards", offerElements.size(), "parsed", pageOffers.size(),
+                            "rejected", offerElements.size() - pageOffers.size());
+
+                    // Sprawdzenie, czy istnieje następna strona
+                    boolean hasNext = doc.selectFirst(NEXT_PAGE_SELECTOR) != null;
+                    Log.debug("page.next", "Czy jest następna strona po stronie " + currentPage + "? " + hasNext, "page", currentPage, "hasNext", hasNext);
+                    return new PageResult(pageOffers, hasNext);
+                }));
             }
 
             // Oczekiwanie na zakończenie wszystkich futures w partii
@@ -160,20 +354,21 @@ public class OlxScraper {
                     .collect(Collectors.toList());
 
             // Dodanie ofert z partii
-            List<Offer> batchOffers = batchResults.stream()
-                    .flatMap(result -> result.getOffers().stream())
-                    .collect(Collectors.toList());
-            offers.addAll(batchOffers);
+            for (PageResult result : batchResults) {
+                offers.addAll(result.getOffers());
+            }
 
             // Sprawdzenie, czy istnieje następna strona na podstawie ostatniej strony w partii
             int lastPageInBatch = page + CONCURRENT_PAGES - 1;
             String lastPageUrl = baseUrl + (lastPageInBatch > 1 ? "&page=" + lastPageInBatch : "");
             try {
-                Document doc = fetchWithRetry(lastPageUrl);
+                Document doc = fetchWithRetry(lastPageUrl, scope);
                 hasNextPage = doc != null && doc.selectFirst(NEXT_PAGE_SELECTOR) != null;
-                System.out.println("Sprawdzono następną stronę dla strony " + lastPageInBatch + ": " + hasNextPage);
+                Log.debug("batch.next", "Sprawdzono następną stronę dla strony " + lastPageInBatch + ": " + hasNextPage, "page", lastPageInBatch, "hasNext", hasNextPage);
             } catch (IOException e) {
-                System.err.println("Błąd podczas sprawdzania następnej strony dla URL: " + lastPageUrl + ", szczegóły: " + e.getMessage());
+                if (!scope.isCancelled()) {
+                    Log.warn("batch.next_error", "Błąd podczas sprawdzania następnej strony dla URL: " + lastPageUrl + ", szczegóły: " + e.getMessage(), "url", lastPageUrl, "error", e.getMessage());
+                }
                 hasNextPage = false;
             }
 
@@ -181,124 +376,307 @@ public class OlxScraper {
 
             // Opóźnienie między partiami, aby uniknąć ograniczeń szybkości
             try {
-                System.out.println("Aktualne opóźnienie między partiami: " + REQUEST_DELAY_MS + "ms, CONCURRENT_PAGES: " + CONCURRENT_PAGES);
-                Thread.sleep(REQUEST_DELAY_MS);
+                Log.debug("batch.delay", "Aktualne opóźnienie między partiami: " + REQUEST_DELAY_MS + "ms, CONCURRENT_PAGES: " + CONCURRENT_PAGES,
+                        "delayMs", REQUEST_DELAY_MS, "concurrentPages", CONCURRENT_PAGES);
+                Thread.sleep(Math.min(REQUEST_DELAY_MS, scope.remainingMillis()));
             } catch (InterruptedException e) {
-                System.err.println("Przerwano działanie podczas opóźnienia: " + e.getMessage());
+                Log.warn("batch.interrupted", "Przerwano działanie podczas opóźnienia: " + e.getMessage());
                 Thread.currentThread().interrupt();
                 hasNextPage = false;
             }
         }
 
+        if (scope.isCancelled()) {
+            Log.warn("search.cancelled", "Skanowanie przerwane (zakres " + scope.getName() + "); wynik częściowy: " + offers.size() + " ofert",
+                    "scope", scope.getName(), "offers", offers.size(), "pagesStarted", page - 1);
+        }
+
         // Zamknięcie puli wątków (opcjonalne, w zależności od cyklu życia aplikacji)
         // synchronized (OlxScraper.class) {
         //     EXECUTOR.shutdown();
         // }
-
         return offers;
     }
 
-    private Document fetchWithRetry(String url) throws IOException {
-        int retries = 0;
-        while (retries < MAX_RETRIES) {
-            try {
-                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-                connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
-                connection.setConnectTimeout(10000);
-                connection.setReadTimeout(10000);
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == 429) {
-                    System.err.println("Otrzymano kod HTTP 429 (Too Many Requests). Ponawiam próbę po opóźnieniu...");
-                    retries++;
-                    synchronized (OlxScraper.class) {
-                        // Dynamiczne zwiększenie opóźnienia
-                        REQUEST_DELAY_MS = Math.min(REQUEST_DELAY_MS + 1000, MAX_REQUEST_DELAY_MS);
-                        // Dynamiczne zmniejszenie liczby równoległych stron
-                        if (CONCURRENT_PAGES > MIN_CONCURRENT_PAGES) {
-                            CONCURRENT_PAGES--;
-                            System.out.println("Zmniejszono CONCURRENT_PAGES do: " + CONCURRENT_PAGES);
-                            // Opcjonalnie: zamknięcie starej puli wątków i utworzenie nowej
-                            EXECUTOR.shutdown();
-                            EXECUTOR = Executors.newFixedThreadPool(CONCURRENT_PAGES);
-                        }
-                        System.out.println("Zwiększono REQUEST_DELAY_MS do: " + REQUEST_DELAY_MS);
-                    }
-                    if (retries >= MAX_RETRIES) {
-                        System.err.println("Przekroczono maksymalną liczbę prób dla URL: " + url);
-                        return null;
-                    }
-                    Thread.sleep(RETRY_DELAY_MS);
-                    continue;
-                } else if (responseCode != 200) {
-                    System.err.println("Otrzymano kod HTTP: " + responseCode + " dla URL: " + url);
-                    return null;
-                } else {
-                    // Po udanym żądaniu, stopniowe zmniejszenie opóźnienia
-                    synchronized (OlxScraper.class) {
-                        if (REQUEST_DELAY_MS > MIN_REQUEST_DELAY_MS) {
-                            REQUEST_DELAY_MS = Math.max(REQUEST_DELAY_MS - 500, MIN_REQUEST_DELAY_MS);
-                            System.out.println("Zmniejszono REQUEST_DELAY_MS do: " + REQUEST_DELAY_MS);
-                        }
-                    }
+    private static String modelSlug(String model) {
+        // Dodajemy specjalny wyjątek dla modelu "iPhone 16 Pro"
+        if (model.equalsIgnoreCase("iPhone 16 Pro")) {
+            return "16pro"; // Ustawiamy sztywno wymaganą wartość bez myślnika
+        }
+        // Dla wszystkich innych modeli stosujemy dotychczasową logikę
+        return model.toLowerCase().replaceAll("iphone\\s*", "").replaceAll("\\s+", "-");
+    }
+
+    // Synchroniczne pobranie (sprawdzanie następnej strony w wątku wywołującym)
+    private Document fetchWithRetry(String url, ScanScope scope) throws IOException {
+        try {
+            FetchedPage fetched = scope.register(fetchAsync(url)).join();
+            return fetched != null ? fetched.getDocument() : null;
+        } catch (CancellationException e) {
+            throw new IOException("Anulowano pobieranie (zakres " + scope.getName() + ")", e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    // Pobiera stronę w puli wątków; ponowienia planowane są jako zadania opóźnione, więc żaden wątek puli
+    // nie czeka bezczynnie na kolejną próbę. Wynik null oznacza odpowiedź, której nie ponawiamy; wyczerpane próby
+    // (także po 429) kończą future wyjątkiem IOException.
+    // Anulowanie zwróconego future zamyka trwające połączenie i porzuca zaplanowane ponowienia.
+    CompletableFuture<FetchedPage> fetchAsync(String url) {
+        ScrapeEvents.HttpFetch event = new ScrapeEvents.HttpFetch();
+        event.begin();
+        event.url = url;
+        CompletableFuture<FetchedPage> result = new CompletableFuture<>();
+        AtomicReference<HttpURLConnection> connection = new AtomicReference<>();
+        result.whenComplete((document, error) -> {
+            HttpURLConnection open = connection.get();
+            if (result.isCancelled() && open != null) {
+                open.disconnect();
+            }
+            event.commit();
+        });
+        currentExecutor().execute(() -> attempt(url, 0, event, connection, result));
+        return result;
+    }
+
+    private void attempt(String url, int retries, ScrapeEvents.HttpFetch event,
+                         AtomicReference<HttpURLConnection> connection, CompletableFuture<FetchedPage> result) {
+        if (result.isDone()) {
+            return; // Anulowane przed rozpoczęciem próby
+        }
+        try {
+            result.complete(fetchOnce(url, retries, event, connection));
+        } catch (IOException e) {
+            if (result.isDone()) {
+                return; // Błąd wynikający z zamknięcia połączenia przy anulowaniu
+            }
+            boolean throttled = e instanceof ThrottledException;
+            if (!throttled) {
+                Log.warn("http.error", "Błąd podczas próby połączenia (próba " + (retries + 1) + "): " + e.getMessage(),
+                        "url", url, "attempt", retries + 1, "error", e.getMessage());
+            }
+            if (retries + 1 >= MAX_RETRIES) {
+                if (throttled) {
+                    Log.error("http.retries_exhausted", "Przekroczono maksymalną liczbę prób dla URL: " + url, "url", url);
                 }
+                result.completeExceptionally(new IOException("Nie udało się pobrać strony po " + MAX_RETRIES + " próbach", e));
+                return;
+            }
+            long retryAfterMs = throttled ? ((ThrottledException) e).retryAfterMs : -1;
+            long delayMs = retryDelayMs(retries + 1, retryAfterMs);
+            Metrics.increment("olx_http_retries_total", "Ponowione żądania do OLX");
+            Log.debug("http.retry_scheduled", "Ponowienie próby za " + delayMs + "ms: " + url,
+                    "url", url, "attempt", retries + 2, "delayMs", delayMs, "retryAfterMs", retryAfterMs);
+            // Kolejna próba trafia do aktualnej puli (mogła zostać zmniejszona po 429) dopiero po upływie opóźnienia
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, task -> currentExecutor().execute(task))
+                    .execute(() -> attempt(url, retries + 1, event, connection, result));
+        }
+    }
+
+    // Opóźnienie ponowienia: Retry-After od serwera (jeśli podany), w przeciwnym razie wykładniczy backoff
+    // z losowym rozrzutem (połowa stała, połowa losowa), aby równoległe strony nie wracały jednocześnie
+    private static long retryDelayMs(int attempt, long retryAfterMs) {
+        if (retryAfterMs >= 0) {
+            return Math.min(retryAfterMs, MAX_RETRY_AFTER_MS) + ThreadLocalRandom.current().nextLong(RETRY_BASE_DELAY_MS / 4 + 1);
+        }
+        long backoff = Math.min(RETRY_BASE_DELAY_MS << Math.min(attempt - 1, 16), MAX_RETRY_DELAY_MS);
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    // Nagłówek Retry-After: liczba sekund albo data HTTP (RFC 1123); -1, gdy brak lub niepoprawny
+    static long parseRetryAfter(String header) {
+        if (header == null || header.isBlank()) {
+            return -1;
+        }
+        String value = header.trim();
+        try {
+            return Math.max(Long.parseLong(value), 0) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toMillis(), 0);
+            } catch (DateTimeParseException ex) {
+                return -1;
+            }
+        }
+    }
+
+    private static ExecutorService currentExecutor() {
+        synchronized (OlxScraper.class) {
+            if (EXECUTOR.isShutdown()) {
+                EXECUTOR = Executors.newFixedThreadPool(CONCURRENT_PAGES);
+            }
+            return EXECUTOR;
+        }
+    }
+
+    // Odpowiedź 429 (lub 503) do ponowienia; retryAfterMs z nagłówka Retry-After albo -1
+    private static class ThrottledException extends IOException {
+        private static final long serialVersionUID = 1L;
 
-                return Jsoup.parse(connection.getInputStream(), "UTF-8", url);
+        private final long retryAfterMs;
+
+        ThrottledException(String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
 
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Błąd podczas próby połączenia (próba " + (retries + 1) + "): " + e.getMessage());
-                retries++;
-                if (retries >= MAX_RETRIES) {
-                    throw new IOException("Nie udało się pobrać strony po " + MAX_RETRIES + " próbach", e);
+    // Pojedyncza próba pobrania; ThrottledException lub IOException oznaczają próbę do ponowienia
+    private FetchedPage fetchOnce(String url, int retries, ScrapeEvents.HttpFetch event,
+                               AtomicReference<HttpURLConnection> openConnection) throws IOException {
+        long requestStart = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            openConnection.set(connection);
+            connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36");
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(10000);
+
+            int responseCode = connection.getResponseCode();
+            event.status = responseCode;
+            event.retries = retries;
+            Metrics.recordNanos("olx_http_request_seconds", "Czas odpowiedzi OLX (do nagłówków) według kodu HTTP",
+                    "status=\"" + responseCode + "\"", System.nanoTime() - requestStart);
+            if (responseCode == 429) {
+                Metrics.increment("olx_http_429_total", "Odpowiedzi 429 Too Many Requests od OLX");
+                Log.warn("http.429", "Otrzymano kod HTTP 429 (Too Many Requests). Ponawiam próbę po opóźnieniu...", "url", url, "attempt", retries + 1);
+                synchronized (OlxScraper.class) {
+                    // Dynamiczne zwiększenie opóźnienia
+                    REQUEST_DELAY_MS = Math.min(REQUEST_DELAY_MS + 1000, MAX_REQUEST_DELAY_MS);
+                    // Dynamiczne zmniejszenie liczby równoległych stron
+                    if (CONCURRENT_PAGES > MIN_CONCURRENT_PAGES) {
+                        CONCURRENT_PAGES--;
+                        Log.info("throttle.concurrency", "Zmniejszono CONCURRENT_PAGES do: " + CONCURRENT_PAGES, "concurrentPages", CONCURRENT_PAGES);
+                        // Stara pula kończy bieżące zadania; nowe próby trafiają do mniejszej puli
+                        EXECUTOR.shutdown();
+                        EXECUTOR = Executors.newFixedThreadPool(CONCURRENT_PAGES);
+                    }
+                    Log.info("throttle.delay", "Zwiększono REQUEST_DELAY_MS do: " + REQUEST_DELAY_MS, "delayMs", REQUEST_DELAY_MS);
                 }
-                try {
-                    Thread.sleep(RETRY_DELAY_MS);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Przerwano podczas oczekiwania na ponowienie", ie);
+                throw new ThrottledException("HTTP 429", parseRetryAfter(connection.getHeaderField("Retry-After")));
+            } else if (responseCode == 503 && connection.getHeaderField("Retry-After") != null) {
+                Log.warn("http.503", "Serwis chwilowo niedostępny (503 z Retry-After). Ponawiam próbę po opóźnieniu...", "url", url, "attempt", retries + 1);
+                throw new ThrottledException("HTTP 503", parseRetryAfter(connection.getHeaderField("Retry-After")));
+            } else if (responseCode != 200) {
+                Log.warn("http.status", "Otrzymano kod HTTP: " + responseCode + " dla URL: " + url, "status", responseCode, "url", url);
+                return null;
+            } else {
+                // Po udanym żądaniu, stopniowe zmniejszenie opóźnienia
+                synchronized (OlxScraper.class) {
+                    if (REQUEST_DELAY_MS > MIN_REQUEST_DELAY_MS) {
+                        REQUEST_DELAY_MS = Math.max(REQUEST_DELAY_MS - 500, MIN_REQUEST_DELAY_MS);
+                        Log.debug("throttle.delay", "Zmniejszono REQUEST_DELAY_MS do: " + REQUEST_DELAY_MS, "delayMs", REQUEST_DELAY_MS);
+                    }
                 }
             }
+
+            // Treść czytana w całości przed parsowaniem, aby czas parsowania nie obejmował sieci
+            byte[] body = connection.getInputStream().readAllBytes();
+            event.bytes = body.length;
+            long parseStart = System.nanoTime();
+            // Śledzenie pozycji pozwala wyznaczyć surowy fragment każdej karty (pamięć kart CardCache)
+            String html = new String(body, StandardCharsets.UTF_8);
+            Document document = Jsoup.parse(html, url, Parser.htmlParser().setTrackPosition(true));
+            Metrics.recordNanos("olx_jsoup_parse_seconds", "Czas parsowania strony wyników przez Jsoup",
+                    System.nanoTime() - parseStart);
+            return new FetchedPage(document, html);
+
+        } catch (ThrottledException e) {
+            throw e;
+        } catch (IOException e) {
+            event.status = 0;
+            event.retries = retries;
+            Metrics.recordNanos("olx_http_request_seconds", "Czas odpowiedzi OLX (do nagłówków) według kodu HTTP",
+                    "status=\"error\"", System.nanoTime() - requestStart);
+            throw e;
+        }
+    }
+
+    // Dopisuje ofertę do partii (koszyk ustalany przez zapytanie); zwraca false, jeśli element został odrzucony.
+    // Metody parsujące są widoczne w pakiecie na potrzeby modułu benchmarks. Ten wariant parsuje kartę zawsze od nowa.
+    boolean parseOffer(Element element, QueryPlanner.Query query, OfferBatch target) {
+        return addCard(parseCard(element, 0L), query, target);
+    }
+
+    // Wariant z pamięcią kart: html to źródło strony sparsowane ze śledzeniem pozycji (Parser.setTrackPosition).
+    // Karta bez zmian od poprzedniego skanowania nie jest parsowana ponownie.
+    boolean parseOffer(Element element, String html, QueryPlanner.Query query, OfferBatch target) {
+        Range start = element.sourceRange();
+        Range end = element.endSourceRange();
+        if (html == null || !start.isTracked() || !end.isTracked()) {
+            return parseOffer(element, query, target);
+        }
+        int from = start.start().pos();
+        int to = end.end().pos();
+        String adId = CardCache.adId(element, html, from, to);
+        if (adId == null) {
+            return parseOffer(element, query, target);
+        }
+        long fingerprint = CardCache.fingerprint(html, from, to, LocalDate.now().toEpochDay());
+        CardCache.Card card = CARD_CACHE.get(adId, fingerprint);
+        if (card == null) {
+            card = parseCard(element, fingerprint);
+            CARD_CACHE.put(adId, card);
+        }
+        return addCard(card, query, target);
+    }
+
+    // Dopisuje kartę do partii; koszyk zależy od zapytania, więc jest ustalany przy każdym użyciu karty.
+    // Przyczyny odrzucenia z parsowania (tytuł, cena, URL, lokalizacja, data) mają pierwszeństwo przed nierozpoznanym
+    // modelem, więc do kart bez koszyka liczone są tylko karty, które poza tym byłyby przyjęte.
+    private boolean addCard(CardCache.Card card, QueryPlanner.Query query, OfferBatch target) {
+        if (card.rejectReason != null) {
+            rejectOffer(card.rejectReason, card.rejectMessage);
+            return false;
+        }
+        int bucketId = query.bucketOf(card.title);
+        if (bucketId < 0) {
+            rejectOffer("unknown_model", "Tytuł nie wskazuje modelu z zapytania: " + card.title);
+            query.recordUnassigned();
+            return false; // Tytuł nie wskazuje jednoznacznie modelu z zapytania wielomodelowego
         }
-        return null;
+        target.add(card.title, card.price, card.url, card.date, card.dateStatus, card.location, card.hasProtectionPackage, bucketId);
+        Metrics.increment("olx_offers_parsed_total", "Poprawnie sparsowane oferty");
+        return true;
     }
 
-    private Offer parseOffer(Element element, String model, String storageCapacity) {
+    // Parsowanie pól karty niezależne od zapytania (selektory, cena, data, status daty)
+    private CardCache.Card parseCard(Element element, long fingerprint) {
         try {
             Element titleElement = element.selectFirst(TITLE_SELECTOR);
             String title = titleElement != null ? titleElement.text() : "";
             if (title.isEmpty()) {
-                System.err.println("Brak tytułu publikacji.");
-                return null;
+                return CardCache.Card.rejected(fingerprint, title, "missing_title", "Brak tytułu publikacji.");
             }
 
             Element priceElement = element.selectFirst(PRICE_SELECTOR);
             String priceText = priceElement != null ? priceElement.text() : "";
             double price = parsePrice(priceText);
             if (price <= 0) {
-                return null; // Cicho pomijamy oferty z nieprawidłową ceną
+                // Cicho pomijamy oferty z nieprawidłową ceną
+                return CardCache.Card.rejected(fingerprint, title, "invalid_price", "Nieprawidłowa cena publikacji: " + title);
             }
 
             Element linkElement = element.selectFirst(LINK_SELECTOR);
             String offerUrl = linkElement != null ? linkElement.attr("href") : "";
             if (offerUrl.isEmpty()) {
-                System.err.println("Brak URL dla publikacji: " + title);
-                return null;
+                return CardCache.Card.rejected(fingerprint, title, "missing_url", "Brak URL dla publikacji: " + title);
             }
-            if (!offerUrl.startsWith("https")) {
-                offerUrl = "https://www.olx.pl" + offerUrl;
+            if (!offerUrl.startsWith("http")) {
+                offerUrl = OLX_BASE_URL + offerUrl;
             }
 
             Element dateLocationElement = element.selectFirst(DATE_LOCATION_SELECTOR);
             String dateLocationText = dateLocationElement != null ? dateLocationElement.text() : "";
             String locationText = parseLocation(dateLocationText);
             if (locationText.isEmpty()) {
-                System.err.println("Brak lokalizacji dla publikacji: " + title);
-                return null;
+                return CardCache.Card.rejected(fingerprint, title, "missing_location", "Brak lokalizacji dla publikacji: " + title);
             }
             LocalDate date = parseDate(dateLocationText);
             if (date == null) {
-                System.err.println("Nieprawidłowa data dla publikacji: " + title);
-                return null;
+                return CardCache.Card.rejected(fingerprint, title, "invalid_date", "Nieprawidłowa data dla publikacji: " + title);
             }
 
             // Ustalanie statusu daty
@@ -314,14 +692,19 @@ public class OlxScraper {
             Element protectionElement = element.selectFirst(PROTECTION_PACKAGE_SELECTOR);
             boolean hasProtectionPackage = protectionElement != null;
 
-            return new Offer(title, price, offerUrl, date, dateStatus, locationText, hasProtectionPackage, model, storageCapacity);
+            return new CardCache.Card(fingerprint, title, price, offerUrl, date, dateStatus, locationText, hasProtectionPackage);
         } catch (Exception e) {
-            System.err.println("Błąd podczas parsowania oferty: " + e.getMessage());
-            return null;
+            return CardCache.Card.rejected(fingerprint, "", "error", "Błąd podczas parsowania oferty: " + e.getMessage());
         }
     }
 
-    private double parsePrice(String priceText) {
+    // Odrzucenia liczone w metrykach; do dziennika trafia tylko próbka (pierwsze i co OFFER_LOG_SAMPLE-te wystąpienie)
+    private static void rejectOffer(String reason, String message) {
+        Metrics.increment("olx_offers_rejected_total", "Odrzucone karty ofert według przyczyny", "reason=\"" + reason + "\"");
+        Log.sampled(Log.Level.DEBUG, "offer.rejected." + reason, OFFER_LOG_SAMPLE, message, "reason", reason);
+    }
+
+    double parsePrice(String priceText) {
         if (priceText == null || priceText.trim().isEmpty()) {
             return 0.0; // Cicho pomijamy puste ceny
         }
@@ -342,9 +725,9 @@ public class OlxScraper {
         }
     }
 
-    private LocalDate parseDate(String dateText) {
+    LocalDate parseDate(String dateText) {
         if (dateText == null || dateText.isEmpty()) {
-            System.err.println("Brak daty w tekście: " + dateText);
+            Log.sampled(Log.Level.DEBUG, "offer.date_missing", OFFER_LOG_SAMPLE, "Brak daty w tekście: " + dateText);
             return null;
         }
 
@@ -375,18 +758,18 @@ public class OlxScraper {
                 return LocalDate.parse(potentialDate, DATE_FORMATTER);
             }
 
-            System.err.println("Nie znaleziono daty w tekście: " + dateText);
+            Log.sampled(Log.Level.DEBUG, "offer.date_not_found", OFFER_LOG_SAMPLE, "Nie znaleziono daty w tekście: " + dateText, "text", dateText);
             return null;
 
         } catch (DateTimeParseException e) {
-            System.err.println("Błąd parsowania daty: " + dateText + ", szczegóły: " + e.getMessage());
+            Log.sampled(Log.Level.DEBUG, "offer.date_invalid", OFFER_LOG_SAMPLE, "Błąd parsowania daty: " + dateText + ", szczegóły: " + e.getMessage(), "text", dateText);
             return null;
         }
     }
 
     private String parseLocation(String dateLocationText) {
         if (dateLocationText == null || dateLocationText.isEmpty()) {
-            System.err.println("Brak lokalizacji w tekście: " + dateLocationText);
+            Log.sampled(Log.Level.DEBUG, "offer.location_missing", OFFER_LOG_SAMPLE, "Brak lokalizacji w tekście: " + dateLocationText);
             return "";
         }
 
@@ -395,22 +778,95 @@ public class OlxScraper {
             String locationPart = parts[0].trim();
             return locationPart.split(",")[0].trim();
         } catch (Exception e) {
-            System.err.println("Błąd parsowania lokalizacji: " + dateLocationText);
+            Log.sampled(Log.Level.DEBUG, "offer.location_invalid", OFFER_LOG_SAMPLE, "Błąd parsowania lokalizacji: " + dateLocationText, "text", dateLocationText);
             return "";
         }
     }
 
+    // Pobrana strona: drzewo DOM (z pozycjami w źródle) oraz źródło HTML
+    static class FetchedPage {
+        private final Document document;
+        private final String html;
+
+        FetchedPage(Document document, String html) {
+            this.document = document;
+            this.html = html;
+        }
+
+        public Document getDocument() {
+            return document;
+        }
+
+        public String getHtml() {
+            return html;
+        }
+    }
+
+    // Przedział cen [from, to] w złotych; to < 0 oznacza przedział otwarty od góry
+    private static class PriceBand {
+        private static final PriceBand ALL = new PriceBand(0, -1);
+
+        private final int from;
+        private final int to; // Wyłącznie; -1 oznacza brak górnej granicy
+
+        PriceBand(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        // Parametry filtra ceny dopisywane do URL wyszukiwania (pusty dla całego zakresu). Filtr OLX obejmuje
+        // obie granice, więc oferty z ceną równą górnej granicy odrzuca dopiero contains()
+        String filter() {
+            StringBuilder filter = new StringBuilder();
+            if (from > 0) {
+                filter.append("&search%5Bfilter_float_price%3Afrom%5D=").append(from);
+            }
+            if (to >= 0) {
+                filter.append("&search%5Bfilter_float_price%3Ato%5D=").append(to);
+            }
+            return filter.toString();
+        }
+
+        boolean contains(double price) {
+            return price >= from && (to < 0 || price < to);
+        }
+
+        boolean canSplit() {
+            return to < 0 || to - from >= 2 * MIN_SHARD_WIDTH;
+        }
+
+        // Rozłączne połowy [from, granica) i [granica, to) – także ceny ułamkowe tuż pod granicą trafiają do dolnej
+        PriceBand[] split() {
+            int boundary;
+            if (to < 0) {
+                boundary = from == 0 ? SHARD_PRICE_CEILING : from * 2;
+            } else {
+                boundary = from + (to - from) / 2;
+            }
+            return new PriceBand[]{new PriceBand(from, boundary), new PriceBand(boundary, to)};
+        }
+
+        @Override
+        public String toString() {
+            return to < 0 ? from + "+" : from + "-" + to;
+        }
+    }
+
+    // Przedział cen z pierwszą stroną wyników pobraną podczas planowania (null, gdy jej nie ma)
+    private record Shard(PriceBand band, FetchedPage firstPage) {
+    }
+
     // Klasa pomocnicza do przechowywania wyników strony
     private static class PageResult {
-        private final List<Offer> offers;
+        private final OfferBatch offers;
         private final boolean hasNextPage;
 
-        public PageResult(List<Offer> offers, boolean hasNextPage) {
+        public PageResult(OfferBatch offers, boolean hasNextPage) {
             this.offers = offers;
             this.hasNextPage = hasNextPage;
         }
 
-        public List<Offer> getOffers() {
+        public OfferBatch getOffers() {
             return offers;
         }
 
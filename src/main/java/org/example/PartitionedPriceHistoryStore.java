@@ -0,0 +1,426 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Historia podzielona na partycje miesięczne (opcjonalnie także według modelu) w katalogu z manifestem:
+// manifest.json zawiera zakres dat i liczbę rekordów każdej partycji, więc zapytanie okienkowe otwiera tylko
+// partycje nakładające się na okno, a dopisanie przepisuje wyłącznie partycje dopisywanych miesięcy.
+// Polityka przechowywania (wiek partycji w miesiącach względem bieżącego miesiąca, 0 = wyłączone):
+//   -Dhistory.compressAfterMonths (domyślnie 2)     kompresja gzip
+//   -Dhistory.downsampleAfterMonths (domyślnie 12)  jeden rekord (mediana) na kombinację, pakiet ochronny i dzień
+//   -Dhistory.archiveAfterMonths (domyślnie 0)      przeniesienie do archive/ i usunięcie z manifestu; późne rekordy
+//                                                   zarchiwizowanego miesiąca są dołączane do istniejącego pliku archiwum
+// Polityka stosowana jest przy pierwszym dopisaniu w danym miesiącu (oraz po migracji), nigdy przy samym otwarciu
+// magazynu, więc odczyt (np. serwer zapytań) nie przepisuje partycji.
+public class PartitionedPriceHistoryStore implements PriceHistoryStore {
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String ARCHIVE_DIR = "archive";
+
+    private final File directory;
+    private final boolean partitionByModel;
+    private final int compressAfterMonths;
+    private final int downsampleAfterMonths;
+    private final int archiveAfterMonths;
+    private final Map<String, Partition> partitions = new TreeMap<>(); // Nazwa pliku bez rozszerzenia -> partycja
+    private YearMonth retentionMonth; // Miesiąc ostatniego zastosowania polityki przechowywania (null – jeszcze nie)
+
+    private static final class Partition {
+        private final String name;
+        private final YearMonth month;
+        private final String modelKey; // null przy podziale tylko według miesiąca
+        private LocalDate minDate;
+        private LocalDate maxDate;
+        private int rows;
+        private boolean compressed;
+        private boolean downsampled;
+
+        private Partition(String name, YearMonth month, String modelKey) {
+            this.name = name;
+            this.month = month;
+            this.modelKey = modelKey;
+        }
+
+        private String fileName() {
+            return name + (compressed ? ".json.gz" : ".json");
+        }
+
+        private boolean overlaps(LocalDate from, LocalDate to) {
+            return (from == null || !maxDate.isBefore(from)) && (to == null || !minDate.isAfter(to));
+        }
+
+        private JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("month", month.toString());
+            if (modelKey != null) {
+                json.put("model", modelKey);
+            }
+            json.put("minDate", minDate.toString());
+            json.put("maxDate", maxDate.toString());
+            json.put("rows", rows);
+            json.put("compressed", compressed);
+            json.put("downsampled", downsampled);
+            return json;
+        }
+
+        private static Partition fromJSON(JSONObject json) {
+            Partition partition = new Partition(json.getString("name"), YearMonth.parse(json.getString("month")),
+                    json.has("model") ? json.getString("model") : null);
+            partition.minDate = LocalDate.parse(json.getString("minDate"));
+            partition.maxDate = LocalDate.parse(json.getString("maxDate"));
+            partition.rows = json.getInt("rows");
+            partition.compressed = json.getBoolean("compressed");
+            partition.downsampled = json.getBoolean("downsampled");
+            return partition;
+        }
+    }
+
+    public PartitionedPriceHistoryStore(File directory) {
+        this(directory, Boolean.getBoolean("history.partitionByModel"), Integer.getInteger("history.compressAfterMonths", 2),
+                Integer.getInteger("history.downsampleAfterMonths", 12), Integer.getInteger("history.archiveAfterMonths", 0));
+    }
+
+    // partitionByModel dotyczy tylko nowego katalogu – istniejący manifest zachowuje swój układ
+    public PartitionedPriceHistoryStore(File directory, boolean partitionByModel, int compressAfterMonths,
+                                        int downsampleAfterMonths, int archiveAfterMonths) {
+        this.directory = directory;
+        this.compressAfterMonths = compressAfterMonths;
+        this.downsampleAfterMonths = downsampleAfterMonths;
+        this.archiveAfterMonths = archiveAfterMonths;
+        this.partitionByModel = loadManifest(partitionByModel);
+    }
+
+    private boolean loadManifest(boolean defaultPartitionByModel) {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.exists()) {
+            return defaultPartitionByModel;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8));
+            JSONArray entries = json.getJSONArray("partitions");
+            for (int i = 0; i < entries.length(); i++) {
+                Partition partition = Partition.fromJSON(entries.getJSONObject(i));
+                partitions.put(partition.name, partition);
+            }
+            return json.getBoolean("partitionByModel");
+        } catch (Exception e) {
+            throw new IllegalStateException("Nie udało się odczytać manifestu historii " + manifest.getPath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        JSONArray entries = new JSONArray();
+        for (Partition partition : partitions.values()) {
+            entries.put(partition.toJSON());
+        }
+        JSONObject json = new JSONObject();
+        json.put("version", 1);
+        json.put("partitionByModel", partitionByModel);
+        json.put("partitions", entries);
+        writeAtomically(new File(directory, MANIFEST_FILE).toPath(), json.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void append(List<PriceHistoryManager.PriceRecord> records) {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        Map<String, List<PriceHistoryManager.PriceRecord>> byPartition = new LinkedHashMap<>();
+        for (PriceHistoryManager.PriceRecord record : records) {
+            byPartition.computeIfAbsent(partitionName(record), name -> new ArrayList<>()).add(record);
+        }
+
+        try {
+            Files.createDirectories(directory.toPath());
+            for (Map.Entry<String, List<PriceHistoryManager.PriceRecord>> entry : byPartition.entrySet()) {
+                PriceHistoryManager.PriceRecord first = entry.getValue().get(0);
+                Partition partition = partitions.get(entry.getKey());
+                List<PriceHistoryManager.PriceRecord> rows;
+                if (partition == null) {
+                    partition = new Partition(entry.getKey(), YearMonth.from(first.getDate()),
+                            partitionByModel ? modelKey(first.getModel()) : null);
+                    rows = new ArrayList<>();
+                } else {
+                    rows = readPartition(partition);
+                }
+                rows.addAll(entry.getValue());
+                writePartition(partition, rows);
+                partitions.put(partition.name, partition);
+            }
+            saveManifest();
+        } catch (IOException e) {
+            Log.error("history.write_failed", "Błąd podczas zapisu partycji historii: " + e.getMessage(),
+                    "directory", directory.getPath(), "records", records.size(), "error", e.getMessage());
+        }
+        Metrics.recordNanos("history_write_seconds", "Czas zapisu historii cen (odczyt, dopisanie i zapis pliku)", System.nanoTime() - start);
+        event.operation = "save";
+        event.file = directory.getPath();
+        event.records = records.size();
+        event.commit();
+
+        YearMonth currentMonth = YearMonth.now();
+        if (!currentMonth.equals(retentionMonth)) {
+            applyRetention(currentMonth);
+        }
+    }
+
+    @Override
+    public synchronized List<PriceHistoryManager.PriceRecord> find(String model, String storageCapacity, boolean hasProtectionPackage,
+                                                                   LocalDate from, LocalDate to) {
+        String modelKey = modelKey(model);
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        for (PriceHistoryManager.PriceRecord record : scan(from, to, modelKey)) {
+            if (record.getModel().equalsIgnoreCase(model) && record.getStorageCapacity().equalsIgnoreCase(storageCapacity)
+                    && record.hasProtectionPackage() == hasProtectionPackage
+                    && (from == null || !record.getDate().isBefore(from)) && (to == null || !record.getDate().isAfter(to))) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized List<PriceHistoryManager.PriceRecord> findAll() {
+        return scan(null, null, null);
+    }
+
+    // Rekordy partycji nakładających się na okno (i, przy podziale według modelu, należących do modelu);
+    // pozostałe partycje są pomijane bez otwierania plików
+    private List<PriceHistoryManager.PriceRecord> scan(LocalDate from, LocalDate to, String modelKey) {
+        long start = System.nanoTime();
+        ScrapeEvents.HistoryIo event = new ScrapeEvents.HistoryIo();
+        event.begin();
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if (!partition.overlaps(from, to) || (modelKey != null && partition.modelKey != null && !partition.modelKey.equals(modelKey))) {
+                Metrics.increment("history_partitions_pruned_total", "Partycje historii pominięte dzięki manifestowi");
+                continue;
+            }
+            try {
+                records.addAll(readPartition(partition));
+            } catch (IOException e) {
+                Log.error("history.read_failed", "Błąd podczas odczytu partycji historii " + partition.fileName() + ": " + e.getMessage(),
+                        "partition", partition.fileName(), "error", e.getMessage());
+            }
+        }
+        Metrics.recordNanos("history_read_seconds", "Czas odczytu i parsowania pliku historii cen", System.nanoTime() - start);
+        event.operation = "read";
+        event.file = directory.getPath();
+        event.records = records.size();
+        event.commit();
+        return records;
+    }
+
+    @Override
+    public synchronized long count() {
+        long rows = 0;
+        for (Partition partition : partitions.values()) {
+            rows += partition.rows;
+        }
+        return rows;
+    }
+
+    @Override
+    public String describe() {
+        return directory.getPath();
+    }
+
+    // Kompresja, próbkowanie i archiwizacja starych partycji; bieżący miesiąc nigdy nie jest zmieniany
+    synchronized void applyRetention(YearMonth currentMonth) {
+        retentionMonth = currentMonth;
+        boolean changed = false;
+        for (Iterator<Partition> iterator = partitions.values().iterator(); iterator.hasNext(); ) {
+            Partition partition = iterator.next();
+            long age = ChronoUnit.MONTHS.between(partition.month, currentMonth);
+            if (age <= 0) {
+                continue;
+            }
+            try {
+                if (archiveAfterMonths > 0 && age >= archiveAfterMonths) {
+                    boolean merged = archive(partition);
+                    iterator.remove();
+                    changed = true;
+                    Log.info("history.partition_archived", "Przeniesiono partycję historii do archiwum: " + partition.fileName()
+                                    + (merged ? " (dołączono do istniejącego pliku)" : ""),
+                            "partition", partition.name, "rows", partition.rows, "merged", merged);
+                    continue;
+                }
+                boolean downsample = downsampleAfterMonths > 0 && age >= downsampleAfterMonths && !partition.downsampled;
+                boolean compress = compressAfterMonths > 0 && age >= compressAfterMonths && !partition.compressed;
+                if (!downsample && !compress) {
+                    continue;
+                }
+                List<PriceHistoryManager.PriceRecord> rows = readPartition(partition);
+                File previous = new File(directory, partition.fileName());
+                int before = rows.size();
+                if (downsample) {
+                    rows = downsample(rows);
+                    partition.downsampled = true;
+                }
+                partition.compressed |= compress;
+                writePartition(partition, rows);
+                if (!previous.getName().equals(partition.fileName())) {
+                    Files.deleteIfExists(previous.toPath());
+                }
+                changed = true;
+                Log.info("history.partition_compacted", "Partycja historii " + partition.name + ": " + before + " -> " + rows.size()
+                                + " rekordów" + (partition.compressed ? " (gzip)" : ""),
+                        "partition", partition.name, "rowsBefore", before, "rowsAfter", rows.size(),
+                        "compressed", partition.compressed, "downsampled", partition.downsampled);
+            } catch (IOException e) {
+                Log.error("history.retention_failed", "Błąd podczas porządkowania partycji historii " + partition.name + ": " + e.getMessage(),
+                        "partition", partition.name, "error", e.getMessage());
+            }
+        }
+        if (changed) {
+            try {
+                saveManifest();
+            } catch (IOException e) {
+                Log.error("history.manifest_write_failed", "Błąd podczas zapisu manifestu historii: " + e.getMessage(),
+                        "directory", directory.getPath(), "error", e.getMessage());
+            }
+        }
+    }
+
+    // Przenosi plik partycji do archive/. Jeśli miesiąc był już archiwizowany (partycja odtworzona przez późne dopisanie),
+    // rekordy są dołączane do pliku archiwum zamiast go nadpisywać; zwraca true przy takim scaleniu
+    private boolean archive(Partition partition) throws IOException {
+        File archive = new File(directory, ARCHIVE_DIR);
+        Files.createDirectories(archive.toPath());
+        File source = new File(directory, partition.fileName());
+        File target = new File(archive, partition.fileName());
+        File[] existing = {new File(archive, partition.name + ".json"), new File(archive, partition.name + ".json.gz")};
+        if (!existing[0].exists() && !existing[1].exists()) {
+            Files.move(source.toPath(), target.toPath());
+            return false;
+        }
+
+        List<PriceHistoryManager.PriceRecord> rows = new ArrayList<>();
+        for (File file : existing) {
+            if (file.exists()) {
+                rows.addAll(readRecords(file, file.getName().endsWith(".gz")));
+            }
+        }
+        rows.addAll(readRecords(source, partition.compressed));
+        writeAtomically(target.toPath(), encode(rows, partition.compressed));
+        for (File file : existing) {
+            if (!file.equals(target)) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.delete(source.toPath());
+        return true;
+    }
+
+    // Jeden rekord na (model, pojemność, pakiet ochronny, dzień) z medianą cen tego dnia
+    private static List<PriceHistoryManager.PriceRecord> downsample(List<PriceHistoryManager.PriceRecord> rows) {
+        Map<String, List<PriceHistoryManager.PriceRecord>> groups = new LinkedHashMap<>();
+        for (PriceHistoryManager.PriceRecord record : rows) {
+            String key = record.getModel() + "|" + record.getStorageCapacity() + "|" + record.hasProtectionPackage() + "|" + record.getDate();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(record);
+        }
+        List<PriceHistoryManager.PriceRecord> sampled = new ArrayList<>(groups.size());
+        for (List<PriceHistoryManager.PriceRecord> group : groups.values()) {
+            double[] prices = new double[group.size()];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = group.get(i).getPrice();
+            }
+            Arrays.sort(prices);
+            PriceHistoryManager.PriceRecord first = group.get(0);
+            sampled.add(new PriceHistoryManager.PriceRecord(first.getDate(),
+                    PriceAnalyzer.calculatePercentile(prices, prices.length, 0.5), first.getModel(),
+                    first.getStorageCapacity(), first.hasProtectionPackage()));
+        }
+        return sampled;
+    }
+
+    private String partitionName(PriceHistoryManager.PriceRecord record) {
+        String month = YearMonth.from(record.getDate()).toString();
+        return partitionByModel ? month + "_" + modelKey(record.getModel()) : month;
+    }
+
+    // "iPhone 14 Pro" -> "iphone-14-pro"
+    private static String modelKey(String model) {
+        return model.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-");
+    }
+
+    private List<PriceHistoryManager.PriceRecord> readPartition(Partition partition) throws IOException {
+        return readRecords(new File(directory, partition.fileName()), partition.compressed);
+    }
+
+    private static List<PriceHistoryManager.PriceRecord> readRecords(File file, boolean compressed) throws IOException {
+        byte[] bytes;
+        try (InputStream input = compressed
+                ? new GZIPInputStream(Files.newInputStream(file.toPath()))
+                : Files.newInputStream(file.toPath())) {
+            bytes = input.readAllBytes();
+        }
+        JSONArray jsonArray = new JSONArray(new String(bytes, StandardCharsets.UTF_8));
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>(jsonArray.length());
+        for (int i = 0; i < jsonArray.length(); i++) {
+            records.add(PriceHistoryManager.PriceRecord.fromJSON(jsonArray.getJSONObject(i)));
+        }
+        return records;
+    }
+
+    // Zapisuje partycję i aktualizuje jej zakres dat oraz liczbę rekordów (manifest zapisuje wywołujący)
+    private void writePartition(Partition partition, List<PriceHistoryManager.PriceRecord> rows) throws IOException {
+        LocalDate minDate = null;
+        LocalDate maxDate = null;
+        for (PriceHistoryManager.PriceRecord record : rows) {
+            minDate = minDate == null || record.getDate().isBefore(minDate) ? record.getDate() : minDate;
+            maxDate = maxDate == null || record.getDate().isAfter(maxDate) ? record.getDate() : maxDate;
+        }
+        writeAtomically(new File(directory, partition.fileName()).toPath(), encode(rows, partition.compressed));
+        partition.minDate = minDate;
+        partition.maxDate = maxDate;
+        partition.rows = rows.size();
+    }
+
+    private static byte[] encode(List<PriceHistoryManager.PriceRecord> rows, boolean compressed) throws IOException {
+        JSONArray jsonArray = new JSONArray();
+        for (PriceHistoryManager.PriceRecord record : rows) {
+            jsonArray.put(record.toJSON());
+        }
+        byte[] bytes = jsonArray.toString().getBytes(StandardCharsets.UTF_8);
+        if (!compressed) {
+            return bytes;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(buffer)) {
+            output.write(bytes);
+        }
+        return buffer.toByteArray();
+    }
+
+    // Plik tymczasowy podmieniany atomowo, więc przerwany zapis nie psuje partycji ani manifestu
+    private void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path temp = Files.createTempFile(directory.toPath(), "partition", ".tmp");
+        Files.write(temp, bytes);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,105 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Obszar odbioru: kilka miast z promieniem; filtruje wyniki jednego ogólnopolskiego skanowania
+public class PickupArea {
+    private final List<String> cities;
+    private final List<double[]> origins;
+    private final double radiusKm;
+
+    public PickupArea(List<String> cities, List<double[]> origins, double radiusKm) {
+        this.cities = cities;
+        this.origins = origins;
+        this.radiusKm = radiusKm;
+    }
+
+    // Dzieli wpis użytkownika ("Warszawa, Łódź") na listę miast
+    public static List<String> parseCities(String input) {
+        if (input == null || input.isBlank()) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(input.split(","))
+                .map(String::trim)
+                .filter(city -> !city.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // Ustala współrzędne miast; miasta bez współrzędnych są pomijane
+    public static PickupArea resolve(List<String> cities, double radiusKm, DistanceCalculator distanceCalculator) {
+        List<String> resolvedCities = new ArrayList<>();
+        List<double[]> origins = new ArrayList<>();
+        for (String city : cities) {
+            double[] coordinates = distanceCalculator.getCoordinates(city);
+            if (coordinates != null) {
+                resolvedCities.add(city);
+                origins.add(coordinates);
+            } else {
+                Log.warn("pickup.origin_unresolved", "Nie udało się ustalić współrzędnych punktu odbioru: " + city, "city", city);
+            }
+        }
+        return new PickupArea(resolvedCities, origins, radiusKm);
+    }
+
+    // Zwraca oferty położone w promieniu radiusKm od dowolnego punktu odbioru.
+    // Indeksowane są unikalne lokalizacje partii (słownik), a nie pojedyncze oferty. Brakujące współrzędne są najpierw
+    // pobierane (z limitem Nominatim); oferty z lokalizacją nadal nieustaloną zostają w wyniku i są raportowane.
+    public OfferBatch filter(OfferBatch offers, DistanceCalculator distanceCalculator) {
+        List<String> locations = offers.locationDictionary();
+        distanceCalculator.prefetchCoordinates(locations).join();
+
+        SpatialIndex<Integer> index = new SpatialIndex<>();
+        boolean[] keep = new boolean[locations.size()];
+        boolean[] unresolved = new boolean[locations.size()];
+        int unresolvedLocations = 0;
+        for (int i = 0; i < locations.size(); i++) {
+            double[] coordinates = distanceCalculator.getCachedCoordinates(locations.get(i));
+            if (coordinates != null) {
+                index.add(coordinates[0], coordinates[1], i);
+            } else {
+                keep[i] = true;
+                unresolved[i] = true;
+                unresolvedLocations++;
+            }
+        }
+
+        Set<Integer> matching = index.withinRadiusOfAny(origins, radiusKm);
+        for (int locationId : matching) {
+            keep[locationId] = true;
+        }
+        OfferBatch result = offers.filter(row -> keep[offers.locationId(row)]);
+        if (unresolvedLocations > 0) {
+            int unresolvedOffers = 0;
+            for (int row = 0; row < offers.size(); row++) {
+                if (unresolved[offers.locationId(row)]) {
+                    unresolvedOffers++;
+                }
+            }
+            Log.warn("pickup.unresolved", "Nie ustalono współrzędnych dla " + unresolvedLocations + " lokalizacji – "
+                            + unresolvedOffers + " ofert pozostawiono bez sprawdzenia odległości",
+                    "locations", unresolvedLocations, "offers", unresolvedOffers);
+        }
+        return result;
+    }
+
+    public List<String> getCities() {
+        return cities;
+    }
+
+    public List<double[]> getOrigins() {
+        return origins;
+    }
+
+    public double getRadiusKm() {
+        return radiusKm;
+    }
+
+    public boolean isEmpty() {
+        return origins.isEmpty();
+    }
+}
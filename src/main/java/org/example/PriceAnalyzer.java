@@ -1,144 +1,161 @@
 package org.example;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class PriceAnalyzer {
-    private final List<Offer> offers;
+    private final OfferBatch offers;
     private final double LOWER_PERCENTILE = 0.05; // 5. percentyl
     private final double UPPER_PERCENTILE = 0.95; // 95. percentyl
 
+    public PriceAnalyzer(OfferBatch offers) {
+        this.offers = offers != null ? offers : new OfferBatch();
+    }
+
     public PriceAnalyzer(List<Offer> offers) {
-        this.offers = offers != null ? offers : new ArrayList<>();
+        this(offers != null ? OfferBatch.fromOffers(offers) : null);
     }
 
-    private PriceStats calculatePriceStats(List<Double> prices, List<Offer> sourceOffers, List<Offer> lowPriceOutlierOffers) {
-        if (prices.isEmpty()) {
+    // Wybiera wiersze z ceną > 0; protection == null oznacza wszystkie oferty
+    private int[] selectRows(Boolean protection) {
+        int[] rows = new int[offers.size()];
+        int count = 0;
+        for (int i = 0; i < offers.size(); i++) {
+            if (offers.price(i) > 0 && (protection == null || offers.hasProtectionPackage(i) == protection)) {
+                rows[count++] = i;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private PriceStats calculatePriceStats(int[] rows, List<Offer> lowPriceOutlierOffers) {
+        if (rows.length == 0) {
             return new PriceStats(0.0, 0.0, 0.0, 0.0, 0.0);
         }
 
         // Obliczanie percentyli dla filtrowania wartości odstających
-        List<Double> sortedPrices = prices.stream().sorted().collect(Collectors.toList());
-        double percentile5 = calculatePercentile(sortedPrices, LOWER_PERCENTILE);
-        double percentile95 = calculatePercentile(sortedPrices, UPPER_PERCENTILE);
+        double[] sortedPrices = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            sortedPrices[i] = offers.price(rows[i]);
+        }
+        Arrays.sort(sortedPrices);
+        double percentile5 = calculatePercentile(sortedPrices, sortedPrices.length, LOWER_PERCENTILE);
+        double percentile95 = calculatePercentile(sortedPrices, sortedPrices.length, UPPER_PERCENTILE);
 
         // Filtrowanie cen w przedziale [5. percentyl, 95. percentyl] i zbieranie tanich ofert odstających
-        List<Double> filteredPrices = new ArrayList<>();
-        for (int i = 0; i < prices.size(); i++) {
-            double price = prices.get(i);
-            Offer offer = sourceOffers.get(i);
+        double[] filteredPrices = new double[rows.length];
+        int filteredCount = 0;
+        for (int row : rows) {
+            double price = offers.price(row);
             if (price >= percentile5 && price <= percentile95) {
-                filteredPrices.add(price);
+                filteredPrices[filteredCount++] = price;
             } else if (price < percentile5) {
-                lowPriceOutlierOffers.add(offer); // Dodajemy tylko tanie oferty do listy odstających
+                lowPriceOutlierOffers.add(offers.offer(row)); // Dodajemy tylko tanie oferty do listy odstających
             }
         }
 
-        if (filteredPrices.isEmpty()) {
+        if (filteredCount == 0) {
             return new PriceStats(0.0, 0.0, 0.0, 0.0, 0.0);
         }
 
         // Obliczanie statystyk na podstawie przefiltrowanych cen
-        double average = filteredPrices.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+        double sum = 0.0;
+        for (int i = 0; i < filteredCount; i++) {
+            sum += filteredPrices[i];
+        }
+        double average = sum / filteredCount;
 
-        double variance = filteredPrices.stream()
-                .mapToDouble(price -> Math.pow(price - average, 2))
-                .average()
-                .orElse(0.0);
-        double standardDeviation = Math.sqrt(variance);
+        double squaredDeviations = 0.0;
+        for (int i = 0; i < filteredCount; i++) {
+            squaredDeviations += Math.pow(filteredPrices[i] - average, 2);
+        }
+        double standardDeviation = Math.sqrt(squaredDeviations / filteredCount);
 
-        List<Double> sortedFilteredPrices = filteredPrices.stream().sorted().collect(Collectors.toList());
-        double percentile25 = calculatePercentile(sortedFilteredPrices, 0.25);
-        double percentile50 = calculatePercentile(sortedFilteredPrices, 0.50);
-        double percentile75 = calculatePercentile(sortedFilteredPrices, 0.75);
+        Arrays.sort(filteredPrices, 0, filteredCount);
+        double percentile25 = calculatePercentile(filteredPrices, filteredCount, 0.25);
+        double percentile50 = calculatePercentile(filteredPrices, filteredCount, 0.50);
+        double percentile75 = calculatePercentile(filteredPrices, filteredCount, 0.75);
 
         return new PriceStats(average, standardDeviation, percentile25, percentile50, percentile75);
     }
 
-    private double calculatePercentile(List<Double> sortedPrices, double percentile) {
-        if (sortedPrices.isEmpty()) {
+    static double calculatePercentile(double[] sortedPrices, int n, double percentile) {
+        if (n == 0) {
             return 0.0;
         }
-        int n = sortedPrices.size();
         double index = percentile * (n - 1);
         int lowerIndex = (int) Math.floor(index);
         int upperIndex = (int) Math.ceil(index);
         if (lowerIndex == upperIndex) {
-            return sortedPrices.get(lowerIndex);
+            return sortedPrices[lowerIndex];
         }
         double fraction = index - lowerIndex;
-        return sortedPrices.get(lowerIndex) * (1 - fraction) + sortedPrices.get(upperIndex) * fraction;
+        return sortedPrices[lowerIndex] * (1 - fraction) + sortedPrices[upperIndex] * fraction;
     }
 
     public PriceStats getOverallPriceStats(List<Offer> lowPriceOutlierOffers) {
-        List<Double> prices = offers.stream()
-                .map(Offer::getPrice)
-                .filter(price -> price > 0)
-                .collect(Collectors.toList());
-        List<Offer> sourceOffers = offers.stream()
-                .filter(offer -> offer.getPrice() > 0)
-                .collect(Collectors.toList());
-        return calculatePriceStats(prices, sourceOffers, lowPriceOutlierOffers);
+        return computeStats("all", null, lowPriceOutlierOffers);
     }
 
     public PriceStats getPriceStatsWithProtection(List<Offer> lowPriceOutlierOffers) {
-        List<Double> prices = offers.stream()
-                .filter(Offer::hasProtectionPackage)
-                .map(Offer::getPrice)
-                .filter(price -> price > 0)
-                .collect(Collectors.toList());
-        List<Offer> sourceOffers = offers.stream()
-                .filter(Offer::hasProtectionPackage)
-                .filter(offer -> offer.getPrice() > 0)
-                .collect(Collectors.toList());
-        return calculatePriceStats(prices, sourceOffers, lowPriceOutlierOffers);
+        return computeStats("protection", true, lowPriceOutlierOffers);
     }
 
     public PriceStats getPriceStatsWithoutProtection(List<Offer> lowPriceOutlierOffers) {
-        List<Double> prices = offers.stream()
-                .filter(offer -> !offer.hasProtectionPackage())
-                .map(Offer::getPrice)
-                .filter(price -> price > 0)
-                .collect(Collectors.toList());
-        List<Offer> sourceOffers = offers.stream()
-                .filter(offer -> !offer.hasProtectionPackage())
-                .filter(offer -> offer.getPrice() > 0)
-                .collect(Collectors.toList());
-        return calculatePriceStats(prices, sourceOffers, lowPriceOutlierOffers);
+        return computeStats("noProtection", false, lowPriceOutlierOffers);
+    }
+
+    // Statystyki dla wariantu ofert, mierzone zdarzeniem JFR
+    private PriceStats computeStats(String variant, Boolean protection, List<Offer> lowPriceOutlierOffers) {
+        ScrapeEvents.PriceStatsComputation event = new ScrapeEvents.PriceStatsComputation();
+        event.begin();
+        int[] rows = selectRows(protection);
+        PriceStats stats = calculatePriceStats(rows, lowPriceOutlierOffers);
+        event.variant = variant;
+        event.offers = rows.length;
+        event.commit();
+        return stats;
     }
 
     public List<Offer> getRecommendedOffersWithoutProtection(double zScoreThreshold, String location, PriceHistoryManager historyManager) {
-        PriceStats stats = getPriceStatsWithoutProtection(new ArrayList<>());
-        double medianPrice = stats.getPercentile50();
-        if (medianPrice == 0.0) {
-            return new ArrayList<>();
-        }
-        return offers.stream()
-                .filter(offer -> !offer.hasProtectionPackage())
-                .filter(offer -> offer.getPrice() <= medianPrice && offer.getPrice() > 0)
-                .filter(offer -> {
-                    double zScore = calculateZScore(offer.getPrice(), stats);
-                    return zScore <= zScoreThreshold;
-                })
-                .filter(offer -> location == null || offer.getLocation().toLowerCase().contains(location.toLowerCase()))
-                .collect(Collectors.toList());
+        return getRecommendedOffers(false, getPriceStatsWithoutProtection(new ArrayList<>()), zScoreThreshold, location);
     }
 
     public List<Offer> getRecommendedOffersWithProtection(double zScoreThreshold, String location, PriceHistoryManager historyManager) {
-        PriceStats stats = getPriceStatsWithProtection(new ArrayList<>());
+        return getRecommendedOffers(true, getPriceStatsWithProtection(new ArrayList<>()), zScoreThreshold, location);
+    }
+
+    private List<Offer> getRecommendedOffers(boolean protection, PriceStats stats, double zScoreThreshold, String location) {
         double medianPrice = stats.getPercentile50();
         if (medianPrice == 0.0) {
             return new ArrayList<>();
         }
-        return offers.stream()
-                .filter(Offer::hasProtectionPackage)
-                .filter(offer -> offer.getPrice() <= medianPrice && offer.getPrice() > 0)
-                .filter(offer -> {
-                    double zScore = calculateZScore(offer.getPrice(), stats);
-                    return zScore <= zScoreThreshold;
-                })
-                .filter(offer -> location == null || offer.getLocation().toLowerCase().contains(location.toLowerCase()))
-                .collect(Collectors.toList());
+
+        // Dopasowanie lokalizacji liczone raz dla każdego wpisu słownika, a nie dla każdej oferty
+        List<String> locationDictionary = offers.locationDictionary();
+        boolean[] locationMatches = new boolean[locationDictionary.size()];
+        String locationLower = location != null ? location.toLowerCase() : null;
+        for (int i = 0; i < locationMatches.length; i++) {
+            locationMatches[i] = locationLower == null || locationDictionary.get(i).toLowerCase().contains(locationLower);
+        }
+
+        List<Offer> recommended = new ArrayList<>();
+        for (int row : selectRows(protection)) {
+            double price = offers.price(row);
+            if (price <= medianPrice
+                    && calculateZScore(price, stats) <= zScoreThreshold
+                    && locationMatches[offers.locationId(row)]) {
+                recommended.add(offers.offer(row));
+            }
+        }
+        return recommended;
+    }
+
+    public ZScores getZScoresWithoutProtection(PriceStats stats) {
+        return ZScores.of(selectRows(false).length, stats);
+    }
+
+    public ZScores getZScoresWithProtection(PriceStats stats) {
+        return ZScores.of(selectRows(true).length, stats);
     }
 
     private double calculateZScore(double price, PriceStats stats) {
@@ -149,26 +166,4 @@ public class PriceAnalyzer {
         }
         return (price - average) / standardDeviation;
     }
-
-    public Map<Offer, Double> calculateZScores(List<Offer> offers, PriceStats stats) {
-        Map<Offer, Double> zScores = new HashMap<>();
-        double average = stats.getAverage();
-        double standardDeviation = stats.getStandardDeviation();
-
-        if (offers.size() < 5 || standardDeviation == 0.0) {
-            offers.forEach(offer -> zScores.put(offer, 0.0));
-            return zScores;
-        }
-
-        for (Offer offer : offers) {
-            double price = offer.getPrice();
-            if (price > 0) {
-                double zScore = (price - average) / standardDeviation;
-                zScores.put(offer, zScore);
-            } else {
-                zScores.put(offer, 0.0);
-            }
-        }
-        return zScores;
-    }
 }
\ No newline at end of file
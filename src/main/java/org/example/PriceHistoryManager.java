@@ -1,17 +1,70 @@
 package org.example;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.*;
+import java.io.File;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PriceHistoryManager {
     private static final String HISTORY_FILE = "price_history.json";
+    private static final String HISTORY_DB = "price_history"; // Baza H2: price_history.mv.db
+    private static final String HISTORY_DIR = "price_history"; // Partycje miesięczne z manifestem
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    // Jeden otwarty magazyn na plik/bazę, współdzielony przez wszystkie instancje menedżera
+    private static final Map<String, PriceHistoryStore> STORES = new ConcurrentHashMap<>();
+
+    private final PriceHistoryStore store;
+
+    // Magazyn z -Dhistory.store (json – domyślnie, h2, partitioned), -Dhistory.db (ścieżka bazy H2 bez rozszerzenia)
+    // i -Dhistory.dir (katalog partycji)
+    public PriceHistoryManager() {
+        this(configuredStore());
+    }
+
+    public PriceHistoryManager(String historyFile) {
+        this(new JsonPriceHistoryStore(historyFile));
+    }
+
+    public PriceHistoryManager(PriceHistoryStore store) {
+        this.store = store;
+    }
+
+    static PriceHistoryStore configuredStore() {
+        String type = System.getProperty("history.store", "json");
+        if (type.equalsIgnoreCase("json")) {
+            return STORES.computeIfAbsent("json:" + HISTORY_FILE, key -> new JsonPriceHistoryStore(HISTORY_FILE));
+        }
+        if (type.equalsIgnoreCase("h2")) {
+            return STORES.computeIfAbsent("h2:" + System.getProperty("history.db", HISTORY_DB), key -> openH2(key.substring(3)));
+        }
+        if (type.equalsIgnoreCase("partitioned")) {
+            return STORES.computeIfAbsent("partitioned:" + System.getProperty("history.dir", HISTORY_DIR),
+                    key -> new PartitionedPriceHistoryStore(new File(key.substring("partitioned:".length()))));
+        }
+        throw new IllegalArgumentException("Nieznany magazyn historii: " + type + " (dozwolone: json, h2, partitioned)");
+    }
+
+    static H2PriceHistoryStore openH2(String path) {
+        try {
+            return new H2PriceHistoryStore(path);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Nie udało się otworzyć bazy historii " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Zamyka współdzielone magazyny (koniec programu)
+    public static void closeStores() {
+        for (PriceHistoryStore store : STORES.values()) {
+            store.close();
+        }
+        STORES.clear();
+    }
 
     public static class PriceRecord {
         private final LocalDate date;
@@ -28,6 +81,26 @@ public class PriceHistoryManager {
             this.hasProtectionPackage = hasProtectionPackage;
         }
 
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public String getStorageCapacity() {
+            return storageCapacity;
+        }
+
+        public boolean hasProtectionPackage() {
+            return hasProtectionPackage;
+        }
+
         public JSONObject toJSON() {
             JSONObject json = new JSONObject();
             json.put("date", date.format(DATE_FORMATTER));
@@ -49,69 +122,42 @@ public class PriceHistoryManager {
     }
 
     public void savePrices(List<Offer> offers) {
-        JSONArray jsonArray;
-        File file = new File(HISTORY_FILE);
-
-        if (file.exists()) {
-            jsonArray = readJsonArray();
-        } else {
-            jsonArray = new JSONArray();
-        }
+        savePrices(OfferBatch.fromOffers(offers));
+    }
 
-        for (Offer offer : offers) {
-            PriceRecord record = new PriceRecord(
-                    offer.getDate(),
-                    offer.getPrice(),
-                    offer.getModel(),
-                    offer.getStorageCapacity(),
-                    offer.hasProtectionPackage()
-            );
-            jsonArray.put(record.toJSON());
+    public void savePrices(OfferBatch offers) {
+        List<PriceRecord> records = new ArrayList<>(offers.size());
+        for (int i = 0; i < offers.size(); i++) {
+            int bucketId = offers.bucketId(i);
+            records.add(new PriceRecord(
+                    LocalDate.ofEpochDay(offers.epochDay(i)),
+                    offers.price(i),
+                    OfferBuckets.modelOf(bucketId),
+                    OfferBuckets.storageOf(bucketId),
+                    offers.hasProtectionPackage(i)
+            ));
         }
+        store.append(records);
+    }
 
-        try (FileWriter fileWriter = new FileWriter(HISTORY_FILE)) {
-            fileWriter.write(jsonArray.toString(2));
-        } catch (IOException e) {
-            System.err.println("Błąd podczas zapisu do pliku JSON: " + e.getMessage());
-        }
+    public List<PriceRecord> getHistoricalPrices(String model, String storageCapacity, boolean hasProtectionPackage) {
+        return store.find(model, storageCapacity, hasProtectionPackage, null, null);
     }
 
-    private JSONArray readJsonArray() {
-        try (FileReader fileReader = new FileReader(HISTORY_FILE)) {
-            StringBuilder content = new StringBuilder();
-            int c;
-            while ((c = fileReader.read()) != -1) {
-                content.append((char) c);
-            }
-            return content.length() > 0 ? new JSONArray(content.toString()) : new JSONArray();
-        } catch (IOException e) {
-            System.err.println("Błąd podczas odczytu pliku JSON: " + e.getMessage());
-            return new JSONArray();
-        }
+    // Wszystkie rekordy (jeden odczyt magazynu) – budowa indeksów w pamięci
+    public List<PriceRecord> getAllRecords() {
+        return store.findAll();
     }
 
-    public List<PriceRecord> getHistoricalPrices(String model, String storageCapacity, boolean hasProtectionPackage) {
-        List<PriceRecord> records = new ArrayList<>();
-        JSONArray jsonArray = readJsonArray();
-
-        for (int i = 0; i < jsonArray.length(); i++) {
-            JSONObject json = jsonArray.getJSONObject(i);
-            if (json.getString("model").equalsIgnoreCase(model) &&
-                    json.getString("storageCapacity").equalsIgnoreCase(storageCapacity) &&
-                    json.getBoolean("hasProtectionPackage") == hasProtectionPackage) {
-                records.add(PriceRecord.fromJSON(json));
-            }
-        }
-        return records;
+    public PriceHistoryStore getStore() {
+        return store;
     }
 
     public String analyzePriceTrend(String model, String storageCapacity, boolean hasProtectionPackage, double currentPrice) {
-        List<PriceRecord> records = getHistoricalPrices(model, storageCapacity, hasProtectionPackage);
         LocalDate today = LocalDate.now();
         LocalDate thirtyDaysAgo = today.minusDays(30);
-
-        List<Double> recentPrices = records.stream()
-                .filter(record -> !record.date.isBefore(thirtyDaysAgo) && !record.date.isAfter(today))
+        // Okno przekazywane do magazynu – w bazie H2 to zakres na indeksie zamiast odczytu całej historii
+        List<Double> recentPrices = store.find(model, storageCapacity, hasProtectionPackage, thirtyDaysAgo, today).stream()
                 .map(record -> record.price)
                 .filter(price -> price > 0)
                 .sorted()
@@ -121,7 +167,11 @@ public class PriceHistoryManager {
             return "Brak danych";
         }
 
-        double median = calculateMedian(recentPrices);
+        return describeTrend(calculateMedian(recentPrices), currentPrice);
+    }
+
+    // Ocena ceny względem mediany z ostatnich 30 dni (wspólna dla tabel i API zapytań)
+    public static String describeTrend(double median, double currentPrice) {
         String medianText = String.format("%d PLN", (int) median);
 
         if (currentPrice < median * 0.9) {
@@ -0,0 +1,25 @@
+package org.example;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Magazyn historii cen za PriceHistoryManager: plik JSON (JsonPriceHistoryStore) albo osadzona baza H2
+// z indeksem (model, pojemność, pakiet ochronny, data) – H2PriceHistoryStore. Wybór: -Dhistory.store=json|h2.
+public interface PriceHistoryStore extends AutoCloseable {
+    void append(List<PriceHistoryManager.PriceRecord> records);
+
+    // Rekordy jednej kombinacji z dni [from, to] (null = bez ograniczenia); model i pojemność bez względu na wielkość liter
+    List<PriceHistoryManager.PriceRecord> find(String model, String storageCapacity, boolean hasProtectionPackage,
+                                               LocalDate from, LocalDate to);
+
+    List<PriceHistoryManager.PriceRecord> findAll();
+
+    long count();
+
+    // Plik lub baza (komunikaty, zdarzenia JFR)
+    String describe();
+
+    @Override
+    default void close() {
+    }
+}
@@ -1,6 +1,8 @@
 package org.example;
 
 public class PriceStats {
+    public static final PriceStats EMPTY = new PriceStats(0.0, 0.0, 0.0, 0.0, 0.0);
+
     private final double average;
     private final double standardDeviation;
     private final double percentile25;
@@ -0,0 +1,95 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+// Łączy kombinacje model + pojemność w wielomodelowe zapytania OLX (jedno na pojemność)
+// i przypisuje pobrane oferty z powrotem do koszyków na podstawie tytułu
+public class QueryPlanner {
+    private static final int MAX_MODELS_PER_QUERY = 8; // Ograniczenie długości URL i liczby wartości filtra
+
+    // Pojedyncze zapytanie: kilka modeli o tej samej pojemności
+    public static class Query {
+        private final List<String> models;
+        private final String storage;
+        private final int[] bucketIds;
+        private final Pattern[] modelPatterns;
+        private final AtomicInteger unassigned = new AtomicInteger(); // Karty bez rozpoznanego modelu w tytule
+
+        public Query(List<String> models, String storage) {
+            this.models = models;
+            this.storage = storage;
+            this.bucketIds = new int[models.size()];
+            this.modelPatterns = new Pattern[models.size()];
+            for (int i = 0; i < models.size(); i++) {
+                bucketIds[i] = OfferBuckets.idOf(models.get(i), storage);
+                modelPatterns[i] = modelPattern(models.get(i));
+            }
+        }
+
+        // Koszyk oferty na podstawie tytułu; najdłuższa pasująca nazwa wygrywa ("13 Pro Max" przed "13 Pro").
+        // Zwraca -1, gdy tytuł nie wskazuje żadnego z modeli zapytania.
+        public int bucketOf(String title) {
+            if (models.size() == 1) {
+                return bucketIds[0]; // Filtr OLX jednoznacznie wyznacza model
+            }
+            String normalized = title.toLowerCase(Locale.ROOT).replace("iphone", " ");
+            int best = -1;
+            int bestLength = -1;
+            for (int i = 0; i < models.size(); i++) {
+                if (models.get(i).length() > bestLength && modelPatterns[i].matcher(normalized).find()) {
+                    best = bucketIds[i];
+                    bestLength = models.get(i).length();
+                }
+            }
+            return best;
+        }
+
+        public void recordUnassigned() {
+            unassigned.incrementAndGet();
+        }
+
+        public int getUnassigned() {
+            return unassigned.get();
+        }
+
+        public List<String> getModels() {
+            return models;
+        }
+
+        public String getStorage() {
+            return storage;
+        }
+
+        public int[] getBucketIds() {
+            return bucketIds;
+        }
+    }
+
+    // Plan zapytań dla listy modeli o jednej pojemności
+    public static List<Query> plan(List<String> models, String storage) {
+        List<Query> queries = new ArrayList<>();
+        for (int from = 0; from < models.size(); from += MAX_MODELS_PER_QUERY) {
+            int to = Math.min(from + MAX_MODELS_PER_QUERY, models.size());
+            queries.add(new Query(new ArrayList<>(models.subList(from, to)), storage));
+        }
+        return queries;
+    }
+
+    // "iPhone 13 Pro Max" -> 13\s*pro\s*max otoczone granicami słowa (tytuły często piszą "13pro")
+    private static Pattern modelPattern(String model) {
+        String[] tokens = model.toLowerCase(Locale.ROOT).replaceAll("iphone\\s*", "").trim().split("\\s+");
+        StringBuilder regex = new StringBuilder("(?<![0-9a-z])");
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                regex.append("\\s*");
+            }
+            regex.append(Pattern.quote(tokens[i]));
+        }
+        regex.append("(?![0-9a-z])");
+        return Pattern.compile(regex.toString());
+    }
+}
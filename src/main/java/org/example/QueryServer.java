@@ -0,0 +1,445 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// API zapytań HTTP (JSON) nad indeksami w pamięci (MarketIndex) – bez uruchamiania skanowania.
+// Serwer JDK z wątkami wirtualnymi (-Dapi.port=...), odpowiedzi w cache’u do najbliższej zmiany indeksu, zmiany daty
+// (okna liczone od dzisiaj) lub upływu -Dapi.cacheTtlSeconds (odległości zależą od cache’a współrzędnych),
+// czasy obsługi w metryce api_request_seconds (kwantyle 0.5–0.999, w tym p99).
+//   GET /api/stats?model=iPhone 14 Pro&storage=256GB[&days=30]   statystyki ostatniego skanowania i okna historii
+//   GET /api/trend?model=...&storage=...&protection=true[&price=2500]   mediana z 30 dni i ocena ceny
+//   GET /api/history?model=...&storage=...&protection=false[&days=90]   podsumowania dzienne
+//   GET /api/deals[?near=Warszawa&radiusKm=50][&model=...&storage=...][&limit=20]   najlepsze oferty według marży
+public final class QueryServer {
+    private static final int CACHE_MAX_ENTRIES = 2000; // Po przekroczeniu cache odpowiedzi czyszczony jest w całości
+    private static final long CACHE_TTL_NANOS = Long.getLong("api.cacheTtlSeconds", 300) * 1_000_000_000L;
+    private static final int TREND_DAYS = 30;
+    private static final int MAX_DAYS = 3660;
+    private static final int DEFAULT_DEAL_LIMIT = 20;
+    private static final int MAX_DEAL_LIMIT = 500;
+
+    private static final Map<String, CachedResponse> CACHE = new ConcurrentHashMap<>();
+    private static HttpServer server;
+    private static ExecutorService executor;
+    private static volatile MarketIndex index;
+    private static volatile DistanceCalculator distanceCalculator;
+
+    private QueryServer() {
+    }
+
+    private interface Query {
+        JSONObject answer(Map<String, String> params);
+    }
+
+    private static final class CachedResponse {
+        private final long generation;
+        private final LocalDate day;
+        private final long createdNanos;
+        private final int status;
+        private final byte[] body;
+
+        private CachedResponse(long generation, LocalDate day, long createdNanos, int status, byte[] body) {
+            this.generation = generation;
+            this.day = day;
+            this.createdNanos = createdNanos;
+            this.status = status;
+            this.body = body;
+        }
+
+        private boolean isValid(long generation, LocalDate day, long nowNanos) {
+            return this.generation == generation && this.day.equals(day) && nowNanos - createdNanos < CACHE_TTL_NANOS;
+        }
+    }
+
+    // Uruchamia API, jeśli podano -Dapi.port
+    public static synchronized void startIfConfigured(PriceHistoryManager historyManager, DistanceCalculator calculator) {
+        Integer port = Integer.getInteger("api.port");
+        if (port != null) {
+            start(port, historyManager, calculator);
+        }
+    }
+
+    public static synchronized boolean start(int port, PriceHistoryManager historyManager, DistanceCalculator calculator) {
+        if (server != null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        MarketIndex marketIndex = new MarketIndex();
+        marketIndex.addRecords(historyManager.getAllRecords());
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        } catch (IOException e) {
+            System.err.println("Nie udało się uruchomić API zapytań: " + e.getMessage());
+            return false;
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/stats", exchange -> handle(exchange, "stats", QueryServer::stats));
+        server.createContext("/api/trend", exchange -> handle(exchange, "trend", QueryServer::trend));
+        server.createContext("/api/history", exchange -> handle(exchange, "history", QueryServer::history));
+        server.createContext("/api/deals", exchange -> handle(exchange, "deals", QueryServer::deals));
+        distanceCalculator = calculator;
+        index = marketIndex;
+        server.start();
+        Log.info("api.server", "API zapytań dostępne pod adresem http://127.0.0.1:" + port + "/api/ (rekordy historii: "
+                        + marketIndex.recordCount() + ")", "port", port, "records", marketIndex.recordCount(),
+                "loadMs", (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    public static synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdown();
+        server = null;
+        index = null;
+        CACHE.clear();
+    }
+
+    public static boolean isRunning() {
+        return index != null;
+    }
+
+    // Ceny właśnie zapisane do historii (no-op, gdy API nie działa)
+    public static void recordPrices(OfferBatch offers) {
+        MarketIndex current = index;
+        if (current != null) {
+            current.addPrices(offers);
+        }
+    }
+
+    public static void publishScan(MarketIndex.ScanSnapshot snapshot) {
+        MarketIndex current = index;
+        if (current != null) {
+            current.publishScan(snapshot);
+        }
+    }
+
+    private static void handle(HttpExchange exchange, String endpoint, Query query) throws IOException {
+        long start = System.nanoTime();
+        int status = 500;
+        try {
+            MarketIndex current = index;
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                send(exchange, status, error("Dozwolona jest tylko metoda GET"));
+                return;
+            }
+            if (current == null) {
+                status = 503;
+                send(exchange, status, error("API zostało zatrzymane"));
+                return;
+            }
+
+            String rawQuery = exchange.getRequestURI().getRawQuery();
+            String key = endpoint + "?" + (rawQuery == null ? "" : rawQuery);
+            // Generacja i data odczytane przed obliczeniem: zmiana w trakcie unieważni wpis przy następnym zapytaniu
+            long generation = current.generation();
+            LocalDate today = LocalDate.now();
+            long now = System.nanoTime();
+            CachedResponse cached = CACHE.get(key);
+            if (cached != null && cached.isValid(generation, today, now)) {
+                Metrics.increment("api_cache_hits_total", "Odpowiedzi API podane z cache’a");
+                status = cached.status;
+                send(exchange, status, cached.body);
+                return;
+            }
+
+            byte[] body;
+            try {
+                body = query.answer(parseQuery(rawQuery)).toString().getBytes(StandardCharsets.UTF_8);
+                status = 200;
+            } catch (IllegalArgumentException e) {
+                body = error(e.getMessage());
+                status = 400;
+            } catch (NoSuchElementException e) {
+                body = error(e.getMessage());
+                status = 404;
+            }
+            if (status != 400) {
+                if (CACHE.size() >= CACHE_MAX_ENTRIES) {
+                    CACHE.clear();
+                }
+                CACHE.put(key, new CachedResponse(generation, today, now, status, body));
+            }
+            send(exchange, status, body);
+        } catch (RuntimeException e) {
+            Log.error("api.request_failed", "Błąd obsługi zapytania API " + endpoint + ": " + e.getMessage(),
+                    "endpoint", endpoint, "error", e.getMessage());
+            send(exchange, status, error("Błąd wewnętrzny"));
+        } finally {
+            exchange.close();
+            Metrics.increment("api_requests_total", "Zapytania API według punktu końcowego i statusu",
+                    "endpoint=\"" + endpoint + "\",status=\"" + status + "\"");
+            Metrics.recordNanos("api_request_seconds", "Czas obsługi zapytania API", "endpoint=\"" + endpoint + "\"",
+                    System.nanoTime() - start);
+        }
+    }
+
+    private static JSONObject stats(Map<String, String> params) {
+        int bucketId = bucket(params);
+        int days = intParam(params, "days", TREND_DAYS, 1, MAX_DAYS);
+        LocalDate today = LocalDate.now();
+        MarketIndex current = index;
+
+        JSONObject json = new JSONObject();
+        json.put("model", OfferBuckets.modelOf(bucketId));
+        json.put("storage", OfferBuckets.storageOf(bucketId));
+        MarketIndex.ScanSnapshot scan = current.lastScan(bucketId);
+        if (scan != null) {
+            JSONObject lastScan = new JSONObject();
+            lastScan.put("scannedAt", scan.scannedAt.toString());
+            lastScan.put("offers", scan.offers);
+            lastScan.put("overall", ResultStreamWriter.stats(scan.overallStats));
+            lastScan.put("withProtection", ResultStreamWriter.stats(scan.statsWithProtection));
+            lastScan.put("withoutProtection", ResultStreamWriter.stats(scan.statsWithoutProtection));
+            json.put("lastScan", lastScan);
+        }
+
+        JSONObject history = new JSONObject();
+        history.put("days", days);
+        for (boolean protection : new boolean[]{true, false}) {
+            double[] prices = current.windowPrices(bucketId, protection, today.minusDays(days), today);
+            JSONObject window = ResultStreamWriter.stats(MarketIndex.stats(prices));
+            window.put("count", prices.length);
+            history.put(protection ? "withProtection" : "withoutProtection", window);
+        }
+        json.put("history", history);
+        return json;
+    }
+
+    private static JSONObject trend(Map<String, String> params) {
+        int bucketId = bucket(params);
+        boolean protection = booleanParam(params, "protection");
+        LocalDate today = LocalDate.now();
+        double[] prices = index.windowPrices(bucketId, protection, today.minusDays(TREND_DAYS), today);
+
+        JSONObject json = new JSONObject();
+        json.put("model", OfferBuckets.modelOf(bucketId));
+        json.put("storage", OfferBuckets.storageOf(bucketId));
+        json.put("protection", protection);
+        json.put("days", TREND_DAYS);
+        json.put("count", prices.length);
+        if (prices.length == 0) {
+            json.put("trend", "Brak danych");
+            return json;
+        }
+        double median = PriceAnalyzer.calculatePercentile(prices, prices.length, 0.5);
+        json.put("median", ResultStreamWriter.round(median));
+        if (params.containsKey("price")) {
+            double price = doubleParam(params, "price");
+            json.put("price", price);
+            json.put("trend", PriceHistoryManager.describeTrend(median, price).trim());
+        }
+        return json;
+    }
+
+    private static JSONObject history(Map<String, String> params) {
+        int bucketId = bucket(params);
+        boolean protection = booleanParam(params, "protection");
+        int days = intParam(params, "days", 90, 1, MAX_DAYS);
+        LocalDate today = LocalDate.now();
+
+        JSONArray daily = new JSONArray();
+        for (MarketIndex.DaySummary day : index.daily(bucketId, protection, today.minusDays(days), today)) {
+            JSONObject json = new JSONObject();
+            json.put("date", day.date.toString());
+            json.put("count", day.count);
+            json.put("min", ResultStreamWriter.round(day.min));
+            json.put("median", ResultStreamWriter.round(day.median));
+            json.put("max", ResultStreamWriter.round(day.max));
+            daily.put(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("model", OfferBuckets.modelOf(bucketId));
+        json.put("storage", OfferBuckets.storageOf(bucketId));
+        json.put("protection", protection);
+        json.put("days", days);
+        json.put("daily", daily);
+        return json;
+    }
+
+    // Oferty z tabel ostatniego skanowania uszeregowane według marży; odległości tylko z lokalnego cache’a współrzędnych
+    // (oferty o nieznanym położeniu pomijane przy filtrze near)
+    private static JSONObject deals(Map<String, String> params) {
+        int limit = intParam(params, "limit", DEFAULT_DEAL_LIMIT, 1, MAX_DEAL_LIMIT);
+        List<MarketIndex.ScanSnapshot> snapshots;
+        if (params.containsKey("model") || params.containsKey("storage")) {
+            MarketIndex.ScanSnapshot scan = index.lastScan(bucket(params));
+            snapshots = scan != null ? List.of(scan) : List.of();
+        } else {
+            snapshots = index.lastScans();
+        }
+
+        double[] origin = null;
+        double radiusKm = Double.POSITIVE_INFINITY;
+        String near = params.get("near");
+        if (near != null && !near.isBlank()) {
+            origin = distanceCalculator.getCachedCoordinates(near);
+            if (origin == null) {
+                throw new IllegalArgumentException("Nieznana lokalizacja (brak w lokalnym cache’u współrzędnych): " + near);
+            }
+            radiusKm = params.containsKey("radiusKm") ? doubleParam(params, "radiusKm") : 50.0;
+        }
+
+        List<MarketIndex.Deal> candidates = new ArrayList<>();
+        double[] distances = new double[16];
+        Set<String> seenUrls = new HashSet<>();
+        for (MarketIndex.ScanSnapshot scan : snapshots) {
+            for (MarketIndex.Deal deal : scan.deals) {
+                double distance = Double.NaN;
+                if (origin != null) {
+                    double[] coordinates = distanceCalculator.getCachedCoordinates(deal.offer.getLocation());
+                    if (coordinates == null) {
+                        continue;
+                    }
+                    distance = DistanceCalculator.haversine(origin[0], origin[1], coordinates[0], coordinates[1]);
+                    if (distance > radiusKm) {
+                        continue;
+                    }
+                }
+                // Oferta może być jednocześnie rekomendowana i odstająca cenowo – pokazujemy ją raz
+                if (!seenUrls.add(deal.offer.getUrl())) {
+                    continue;
+                }
+                if (candidates.size() == distances.length) {
+                    distances = Arrays.copyOf(distances, distances.length * 2);
+                }
+                distances[candidates.size()] = distance;
+                candidates.add(deal);
+            }
+        }
+
+        TopK best = new TopK(Math.min(limit, candidates.size()));
+        for (int i = 0; i < candidates.size(); i++) {
+            best.offer(i, candidates.get(i).margin);
+        }
+        JSONArray results = new JSONArray();
+        for (int i : best.drainDescending()) {
+            MarketIndex.Deal deal = candidates.get(i);
+            Offer offer = deal.offer;
+            JSONObject json = new JSONObject();
+            json.put("table", deal.table);
+            json.put("model", offer.getModel());
+            json.put("storage", offer.getStorageCapacity());
+            json.put("title", offer.getTitle());
+            json.put("price", offer.getPrice());
+            json.put("protection", offer.hasProtectionPackage());
+            json.put("date", offer.getDate().toString());
+            json.put("location", offer.getLocation());
+            json.put("zScore", ResultStreamWriter.round(deal.zScore));
+            json.put("sellingPrice", ResultStreamWriter.round(deal.sellingPrice));
+            json.put("margin", ResultStreamWriter.round(deal.margin));
+            json.put("distanceKm", Double.isNaN(distances[i]) ? JSONObject.NULL : ResultStreamWriter.round(distances[i]));
+            json.put("url", offer.getUrl());
+            results.put(json);
+        }
+        JSONObject json = new JSONObject();
+        json.put("matching", candidates.size());
+        json.put("deals", results);
+        return json;
+    }
+
+    private static int bucket(Map<String, String> params) {
+        String model = params.get("model");
+        String storage = params.get("storage");
+        if (model == null || storage == null) {
+            throw new IllegalArgumentException("Wymagane parametry: model i storage");
+        }
+        int bucketId = index.bucketOf(model, storage);
+        if (bucketId < 0) {
+            throw new NoSuchElementException("Brak danych dla: " + model + " " + storage);
+        }
+        return bucketId;
+    }
+
+    private static boolean booleanParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Wymagany parametr: " + name + " (true/false)");
+        }
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Nieprawidłowa wartość " + name + ": " + value + " (true/false)");
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static double doubleParam(Map<String, String> params, String name) {
+        try {
+            double value = Double.parseDouble(params.get(name).replace(",", "."));
+            if (!(value >= 0) || Double.isInfinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Nieprawidłowa wartość " + name + ": " + params.get(name));
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < min || parsed > max) {
+                throw new NumberFormatException();
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Nieprawidłowa wartość " + name + ": " + value + " (" + min + "–" + max + ")");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static byte[] error(String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.example;
+
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Strumieniowy zapis wyników trybu wsadowego: każda kombinacja zapisywana i opróżniana zaraz po ukończeniu,
+// aby odbiorca nie czekał na koniec przebiegu.
+// JSONL: rekordy "combination" (statystyki), "deal" (oferty z tabel) i końcowy "summary".
+// CSV: tylko oferty (jeden wiersz na ofertę z nagłówkiem), bo statystyki mają inny układ kolumn.
+public class ResultStreamWriter implements Closeable {
+    public enum Format { JSONL, CSV }
+
+    private static final String CSV_HEADER = "table,model,storage,title,price,protection,date,date_status,location,"
+            + "z_score,selling_price,margin,depot_km,url";
+
+    private final Writer writer;
+    private final Format format;
+    private final boolean ownsWriter;
+    private boolean headerWritten;
+
+    public ResultStreamWriter(Writer writer, Format format, boolean ownsWriter) {
+        this.writer = writer;
+        this.format = format;
+        this.ownsWriter = ownsWriter;
+    }
+
+    // Standardowe wyjście zarezerwowane dla rekordów: System.out (komunikaty programu i bibliotek) przekierowany
+    // na standardowe wyjście błędów; zwraca oryginalny strumień do przekazania do open()
+    public static PrintStream reserveStdout() {
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        return stdout;
+    }
+
+    // "-" oznacza standardowe wyjście stdout (nie jest zamykane)
+    public static ResultStreamWriter open(String output, Format format, OutputStream stdout) throws IOException {
+        if (output == null || output.equals("-")) {
+            return new ResultStreamWriter(new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8)), format, false);
+        }
+        return new ResultStreamWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)),
+                format, true);
+    }
+
+    public synchronized void writeCombination(String model, String storage, int offers, int filteredOffers,
+                                              PriceStats overall, PriceStats withProtection, PriceStats withoutProtection) throws IOException {
+        if (format != Format.JSONL) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("type", "combination");
+        json.put("model", model);
+        json.put("storage", storage);
+        json.put("offers", offers);
+        json.put("filteredOffers", filteredOffers);
+        json.put("overall", stats(overall));
+        json.put("withProtection", stats(withProtection));
+        json.put("withoutProtection", stats(withoutProtection));
+        writeLine(json.toString());
+    }
+
+    // depotKm: odległość do najbliższego punktu odbioru lub NaN, gdy współrzędne nie są znane lokalnie
+    public synchronized void writeDeal(String table, Offer offer, double zScore, double sellingPrice, double margin,
+                                       double depotKm) throws IOException {
+        if (format == Format.JSONL) {
+            JSONObject json = new JSONObject();
+            json.put("type", "deal");
+            json.put("table", table);
+            json.put("model", offer.getModel());
+            json.put("storage", offer.getStorageCapacity());
+            json.put("title", offer.getTitle());
+            json.put("price", offer.getPrice());
+            json.put("protection", offer.hasProtectionPackage());
+            json.put("date", offer.getDate().toString());
+            json.put("dateStatus", offer.getDateStatus());
+            json.put("location", offer.getLocation());
+            json.put("zScore", round(zScore));
+            json.put("sellingPrice", round(sellingPrice));
+            json.put("margin", round(margin));
+            json.put("depotKm", Double.isNaN(depotKm) ? JSONObject.NULL : round(depotKm));
+            json.put("url", offer.getUrl());
+            writeLine(json.toString());
+            return;
+        }
+
+        if (!headerWritten) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+            headerWritten = true;
+        }
+        writeLine(String.join(",", csv(table), csv(offer.getModel()), csv(offer.getStorageCapacity()), csv(offer.getTitle()),
+                Double.toString(offer.getPrice()), Boolean.toString(offer.hasProtectionPackage()), offer.getDate().toString(),
+                csv(offer.getDateStatus()), csv(offer.getLocation()), Double.toString(round(zScore)),
+                Double.toString(round(sellingPrice)), Double.toString(round(margin)),
+                Double.isNaN(depotKm) ? "" : Double.toString(round(depotKm)), csv(offer.getUrl())));
+    }
+
+    public synchronized void writeSummary(int combinations, int unfinished, long elapsedMillis) throws IOException {
+        if (format != Format.JSONL) {
+            writer.flush();
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("type", "summary");
+        json.put("combinations", combinations);
+        json.put("unfinished", unfinished);
+        json.put("elapsedMs", elapsedMillis);
+        writeLine(json.toString());
+    }
+
+    // Opróżnia bufor po zapisaniu wszystkich rekordów kombinacji; wywołujący synchronizuje się na writerze,
+    // aby rekordy jednej kombinacji nie przeplatały się z innymi
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (ownsWriter) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    // Statystyki jako JSON (także w odpowiedziach API zapytań)
+    static JSONObject stats(PriceStats stats) {
+        JSONObject json = new JSONObject();
+        json.put("average", round(stats.getAverage()));
+        json.put("standardDeviation", round(stats.getStandardDeviation()));
+        json.put("p25", round(stats.getPercentile25()));
+        json.put("median", round(stats.getPercentile50()));
+        json.put("p75", round(stats.getPercentile75()));
+        return json;
+    }
+
+    static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,113 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Punkty kontrolne przebiegu: surowe oferty każdej zeskanowanej kombinacji zapisywane na dysk,
+// aby ponowne uruchomienie w oknie świeżości pobierało tylko brakujące lub nieaktualne kombinacje
+public class RunCache {
+    private static final String CACHE_DIR = "run_cache";
+    private static final Duration DEFAULT_FRESHNESS = Duration.ofMinutes(30);
+
+    private final File directory;
+    private final Duration freshness;
+
+    public RunCache() {
+        this(new File(CACHE_DIR), DEFAULT_FRESHNESS);
+    }
+
+    public RunCache(File directory, Duration freshness) {
+        this.directory = directory;
+        this.freshness = freshness;
+    }
+
+    // Klucz zapytania: model, pojemność, lokalizacja skanowania i (posortowane) stany
+    public static String queryKey(String model, String storage, String location, List<String> states) {
+        List<String> sortedStates = new ArrayList<>(states);
+        Collections.sort(sortedStates);
+        return model + "|" + storage + "|" + location + "|" + String.join(",", sortedStates);
+    }
+
+    // Zwraca zapisane oferty, jeśli punkt kontrolny istnieje i jest świeży; w przeciwnym razie null
+    public OfferBatch load(String queryKey, String model, String storage) {
+        File file = fileFor(queryKey);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (!queryKey.equals(json.optString("key"))) {
+                return null; // Kolizja nazwy pliku
+            }
+            long age = System.currentTimeMillis() - json.getLong("timestamp");
+            if (age < 0 || age > freshness.toMillis()) {
+                return null;
+            }
+
+            JSONArray offers = json.getJSONArray("offers");
+            int bucketId = OfferBuckets.idOf(model, storage);
+            OfferBatch batch = new OfferBatch(offers.length());
+            for (int i = 0; i < offers.length(); i++) {
+                JSONObject offer = offers.getJSONObject(i);
+                batch.add(offer.getString("title"), offer.getDouble("price"), offer.getString("url"),
+                        LocalDate.parse(offer.getString("date")), offer.optString("dateStatus", ""),
+                        offer.optString("location", ""), offer.getBoolean("hasProtectionPackage"), bucketId);
+            }
+            return batch;
+        } catch (Exception e) {
+            Log.warn("checkpoint.read_failed", "Błąd podczas odczytu punktu kontrolnego " + file.getName() + ": " + e.getMessage(),
+                    "file", file.getName(), "error", e.getMessage());
+            return null;
+        }
+    }
+
+    // Zapisuje oferty kombinacji; plik tymczasowy podmieniany atomowo, więc przerwany zapis nie psuje cache’a
+    public void save(String queryKey, OfferBatch offers) {
+        JSONArray jsonOffers = new JSONArray();
+        for (int i = 0; i < offers.size(); i++) {
+            Offer offer = offers.offer(i);
+            JSONObject json = new JSONObject();
+            json.put("title", offer.getTitle());
+            json.put("price", offer.getPrice());
+            json.put("url", offer.getUrl());
+            json.put("date", offer.getDate().toString());
+            json.put("dateStatus", offer.getDateStatus());
+            json.put("location", offer.getLocation());
+            json.put("hasProtectionPackage", offer.hasProtectionPackage());
+            jsonOffers.put(json);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("key", queryKey);
+        json.put("timestamp", System.currentTimeMillis());
+        json.put("offers", jsonOffers);
+
+        try {
+            Files.createDirectories(directory.toPath());
+            Path target = fileFor(queryKey).toPath();
+            Path temp = Files.createTempFile(directory.toPath(), "checkpoint", ".tmp");
+            Files.write(temp, json.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("checkpoint.write_failed", "Błąd podczas zapisu punktu kontrolnego: " + e.getMessage(),
+                    "query", queryKey, "error", e.getMessage());
+        }
+    }
+
+    private File fileFor(String queryKey) {
+        return new File(directory, Integer.toHexString(queryKey.hashCode()) + ".json");
+    }
+}
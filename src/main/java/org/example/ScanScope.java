@@ -0,0 +1,172 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Zakres skanowania z terminem (odpowiednik StructuredTaskScope bez funkcji preview):
+// po upływie terminu lub wywołaniu cancel() anulowane są zarejestrowane zadania (np. pobierania stron)
+// oraz zakresy podrzędne. Zakres podrzędny nie może trwać dłużej niż nadrzędny; po zakończeniu pracy
+// zamykany jest przez close(), co wyrejestrowuje go z nadrzędnego.
+public class ScanScope implements AutoCloseable {
+    private static final ScheduledThreadPoolExecutor DEADLINE_TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "scan-scope-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        DEADLINE_TIMER.setRemoveOnCancelPolicy(true); // Zamknięte zakresy nie zostają w kolejce do swojego terminu
+    }
+
+    private final String name;
+    private final long deadlineNanos;
+    private final boolean bounded;
+    private final ScanScope parent;
+    private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+    private final Set<ScanScope> children = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger failedTasks = new AtomicInteger();
+    private volatile ScheduledFuture<?> deadlineTimer;
+    private volatile boolean cancelled;
+
+    private ScanScope(String name, long deadlineNanos, boolean bounded, ScanScope parent) {
+        this.name = name;
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+        this.parent = parent;
+    }
+
+    // Zakres z terminem liczonym od teraz
+    public static ScanScope bounded(String name, Duration budget) {
+        ScanScope scope = new ScanScope(name, System.nanoTime() + budget.toNanos(), true, null);
+        scope.scheduleDeadline();
+        return scope;
+    }
+
+    // Zakres bez terminu (pojedyncze wyszukiwanie, benchmarki)
+    public static ScanScope unbounded(String name) {
+        return new ScanScope(name, 0, false, null);
+    }
+
+    // Aktywne anulowanie w chwili upływu terminu, także gdy nikt nie czeka na wynik
+    private void scheduleDeadline() {
+        deadlineTimer = DEADLINE_TIMER.schedule(this::cancel, Math.max(deadlineNanos - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+    }
+
+    // Zakres podrzędny z własnym budżetem, ograniczony terminem bieżącego zakresu
+    public ScanScope child(String childName, Duration budget) {
+        long childDeadline = System.nanoTime() + budget.toNanos();
+        if (bounded && childDeadline - deadlineNanos > 0) {
+            childDeadline = deadlineNanos;
+        }
+        ScanScope child = new ScanScope(childName, childDeadline, true, this);
+        children.add(child);
+        child.scheduleDeadline();
+        if (cancelled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    // Rejestruje zadanie do anulowania razem z zakresem; ukończone zadania są wyrejestrowywane,
+    // a zakończone błędem (innym niż anulowanie) liczone jako nieudane
+    public <T> CompletableFuture<T> register(CompletableFuture<T> task) {
+        tasks.add(task);
+        task.whenComplete((result, error) -> {
+            tasks.remove(task);
+            if (error != null && !(error instanceof CancellationException)) {
+                failedTasks.incrementAndGet();
+            }
+        });
+        if (cancelled) {
+            task.cancel(true);
+        }
+        return task;
+    }
+
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        ScheduledFuture<?> timer = deadlineTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        for (ScanScope child : children) {
+            child.cancel();
+        }
+    }
+
+    // Kończy pracę zakresu: zatrzymuje jego zegar i usuwa go z listy zakresów podrzędnych rodzica
+    @Override
+    public void close() {
+        ScheduledFuture<?> timer = deadlineTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (bounded && System.nanoTime() - deadlineNanos >= 0);
+    }
+
+    // Pozostały czas w milisekundach (Long.MAX_VALUE dla zakresu bez terminu)
+    public long remainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()), 0);
+    }
+
+    // Czeka na zadania do terminu zakresu (plus grace na dokończenie analizy częściowych wyników);
+    // zwraca liczbę zadań nieukończonych w tym czasie – te są anulowane
+    public int awaitAll(Collection<? extends CompletableFuture<?>> futures, Duration grace) {
+        long waitUntil = bounded ? deadlineNanos + grace.toNanos() : Long.MAX_VALUE;
+        int unfinished = 0;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                if (bounded) {
+                    future.get(Math.max(waitUntil - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                unfinished++;
+            } catch (ExecutionException | CancellationException e) {
+                // Błędy pojedynczych zadań obsługuje wywołujący
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return (int) futures.stream().filter(f -> !f.isDone()).count();
+            }
+        }
+        return unfinished;
+    }
+
+    // Liczba zarejestrowanych zadań zakończonych błędem (wynik zakresu jest wtedy niepełny)
+    public int getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
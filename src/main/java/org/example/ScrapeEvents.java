@@ -0,0 +1,98 @@
+package org.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Zdarzenia JFR dla faz przebiegu (pobieranie, parsowanie, analiza, historia, geokodowanie).
+// Profil nagrywania: src/main/resources/jfr/olx-scraper.jfc
+// (np. -XX:StartFlightRecording:settings=default,settings=src/main/resources/jfr/olx-scraper.jfc,filename=sweep.jfr)
+public final class ScrapeEvents {
+    private ScrapeEvents() {
+    }
+
+    @Name("org.example.HttpFetch")
+    @Label("Pobranie strony OLX")
+    @Category({"OLX Scraper", "Sieć"})
+    @Description("Pobranie strony wyników wraz z ponowieniami (fetchAsync); czas obejmuje opóźnienia między próbami")
+    @StackTrace(false)
+    public static class HttpFetch extends Event {
+        @Label("URL")
+        public String url;
+
+        @Label("Kod HTTP")
+        @Description("Kod ostatniej odpowiedzi; 0 przy błędzie połączenia")
+        public int status;
+
+        @Label("Rozmiar")
+        @DataAmount
+        public long bytes;
+
+        @Label("Ponowienia")
+        public int retries;
+    }
+
+    @Name("org.example.PageParse")
+    @Label("Parsowanie strony")
+    @Category({"OLX Scraper", "Parsowanie"})
+    @StackTrace(false)
+    public static class PageParse extends Event {
+        @Label("Strona")
+        public int page;
+
+        @Label("Karty ofert")
+        public int cards;
+
+        @Label("Sparsowane oferty")
+        public int parsed;
+    }
+
+    @Name("org.example.PriceStats")
+    @Label("Statystyki cen")
+    @Category({"OLX Scraper", "Analiza"})
+    @StackTrace(false)
+    public static class PriceStatsComputation extends Event {
+        @Label("Wariant")
+        @Description("all, protection lub noProtection")
+        public String variant;
+
+        @Label("Liczba ofert")
+        public int offers;
+    }
+
+    @Name("org.example.HistoryIo")
+    @Label("Historia cen")
+    @Category({"OLX Scraper", "Historia"})
+    @StackTrace(false)
+    public static class HistoryIo extends Event {
+        @Label("Operacja")
+        @Description("read lub save")
+        public String operation;
+
+        @Label("Plik")
+        public String file;
+
+        @Label("Rekordy")
+        public int records;
+    }
+
+    @Name("org.example.Geocode")
+    @Label("Współrzędne lokalizacji")
+    @Category({"OLX Scraper", "Geokodowanie"})
+    @StackTrace(false)
+    public static class Geocode extends Event {
+        @Label("Miejscowość")
+        public String city;
+
+        @Label("Źródło")
+        @Description("local (cache/słownik) lub nominatim")
+        public String source;
+
+        @Label("Znaleziono")
+        public boolean found;
+    }
+}
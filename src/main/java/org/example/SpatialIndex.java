@@ -0,0 +1,89 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Siatka geograficzna (komórki CELL_DEGREES x CELL_DEGREES) do zapytań o punkty w promieniu R km
+public class SpatialIndex<T> {
+    private static final double CELL_DEGREES = 0.25; // ok. 28 km szerokości geograficznej
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private int size;
+
+    private static class Entry<T> {
+        private final double latitude;
+        private final double longitude;
+        private final T item;
+
+        private Entry(double latitude, double longitude, T item) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.item = item;
+        }
+    }
+
+    public void add(double latitude, double longitude, T item) {
+        cells.computeIfAbsent(cellKey(cell(latitude), cell(longitude)), key -> new ArrayList<>())
+                .add(new Entry<>(latitude, longitude, item));
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Zwraca elementy w promieniu radiusKm od punktu (sprawdzane są tylko komórki pokrywające promień)
+    public List<T> withinRadius(double latitude, double longitude, double radiusKm) {
+        List<T> result = new ArrayList<>();
+        collect(latitude, longitude, radiusKm, result);
+        return result;
+    }
+
+    // Zwraca elementy w promieniu radiusKm od dowolnego z punktów (bez duplikatów, w kolejności znalezienia)
+    public Set<T> withinRadiusOfAny(List<double[]> origins, double radiusKm) {
+        Set<T> result = new LinkedHashSet<>();
+        for (double[] origin : origins) {
+            collect(origin[0], origin[1], radiusKm, result);
+        }
+        return result;
+    }
+
+    private void collect(double latitude, double longitude, double radiusKm, Collection<T> target) {
+        double latDelta = radiusKm / KM_PER_DEGREE;
+        double cosLat = Math.max(Math.cos(Math.toRadians(Math.min(Math.abs(latitude) + latDelta, 89.0))), 0.01);
+        double lonDelta = radiusKm / (KM_PER_DEGREE * cosLat);
+
+        int minLatCell = cell(latitude - latDelta);
+        int maxLatCell = cell(latitude + latDelta);
+        int minLonCell = cell(longitude - lonDelta);
+        int maxLonCell = cell(longitude + lonDelta);
+
+        for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (int lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+                List<Entry<T>> entries = cells.get(cellKey(latCell, lonCell));
+                if (entries == null) {
+                    continue;
+                }
+                for (Entry<T> entry : entries) {
+                    if (DistanceCalculator.haversine(latitude, longitude, entry.latitude, entry.longitude) <= radiusKm) {
+                        target.add(entry.item);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+}
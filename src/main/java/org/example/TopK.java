@@ -0,0 +1,90 @@
+package org.example;
+
+// Ograniczony kopiec min najlepszych K wyników (indeks wiersza + wynik) na tablicach prymitywnych:
+// kolejne oferty przechodzą w O(log K), a oferty gorsze od najsłabszej z zachowanych odpadają w O(1)
+public class TopK {
+    private final int capacity;
+    private final int[] indices;
+    private final double[] scores;
+    private int size;
+    private int offered;
+
+    public TopK(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.indices = new int[this.capacity];
+        this.scores = new double[this.capacity];
+    }
+
+    public void offer(int index, double score) {
+        offered++;
+        if (capacity == 0 || Double.isNaN(score)) {
+            return;
+        }
+        if (size < capacity) {
+            indices[size] = index;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            indices[0] = index;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    // Zachowane indeksy od najlepszego wyniku (kopiec jest przy tym opróżniany)
+    public int[] drainDescending() {
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = indices[0];
+            size--;
+            indices[0] = indices[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Liczba wszystkich zgłoszonych ofert (także odrzuconych)
+    public int offered() {
+        return offered;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (scores[parent] <= scores[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[position] <= scores[smallest]) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int index = indices[a];
+        indices[a] = indices[b];
+        indices[b] = index;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,29 @@
+package org.example;
+
+// Parametry z-score dla jednego koszyka; wartość liczona na żądanie zamiast mapy Offer -> Double
+public class ZScores {
+    public static final ZScores NONE = new ZScores(0.0, 0.0);
+
+    private final double average;
+    private final double standardDeviation;
+
+    public ZScores(double average, double standardDeviation) {
+        this.average = average;
+        this.standardDeviation = standardDeviation;
+    }
+
+    // Dla mniej niż 5 ofert lub zerowego odchylenia wszystkie z-score wynoszą 0
+    public static ZScores of(int offerCount, PriceStats stats) {
+        if (offerCount < 5 || stats.getStandardDeviation() == 0.0) {
+            return NONE;
+        }
+        return new ZScores(stats.getAverage(), stats.getStandardDeviation());
+    }
+
+    public double of(double price) {
+        if (standardDeviation == 0.0 || price <= 0) {
+            return 0.0;
+        }
+        return (price - average) / standardDeviation;
+    }
+}
@@ -0,0 +1,47 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class GazetteerTest {
+    private static Gazetteer read(String content) throws Exception {
+        return Gazetteer.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void looksUpNamesWithFoldedDiacriticsAndSeparators() throws Exception {
+        Gazetteer gazetteer = read("# nazwa\tszerokość\tdługość\n"
+                + "Łódź\t51.7592\t19.4560\n"
+                + "Bielsko-Biała\t49.8224\t19.0444\n"
+                + "Kraków\t50.0614\t19.9366\n");
+
+        assertEquals(3, gazetteer.size());
+        assertArrayEquals(new double[]{51.7592, 19.4560}, gazetteer.lookup("lodz"), 1e-9);
+        assertArrayEquals(new double[]{49.8224, 19.0444}, gazetteer.lookup("Bielsko  Biała"), 1e-9);
+        assertArrayEquals(new double[]{50.0614, 19.9366}, gazetteer.lookup("Kraków, Podgórze"), 1e-9);
+        assertNull(gazetteer.lookup("Nieznanowo"));
+    }
+
+    @Test
+    void readsGeoNamesDumpRows() throws Exception {
+        Gazetteer gazetteer = read("3081368\tWrocław\tWroclaw\tBreslau,Vratislavia\t51.1\t17.03333\tP\tPPLA\tPL\t\t72\t\t\t\t634893\t\t120\tEurope/Warsaw\t2024-01-01\n"
+                + "broken\trow\n");
+
+        assertEquals(1, gazetteer.size());
+        assertArrayEquals(new double[]{51.1, 17.03333}, gazetteer.lookup("WROCLAW"), 1e-9);
+    }
+
+    @Test
+    void keepsFirstEntryForDuplicateNames() throws Exception {
+        Gazetteer gazetteer = read("Nowa Wieś\t50.0\t20.0\nNowa Wies\t51.0\t21.0\n");
+
+        assertEquals(1, gazetteer.size());
+        assertArrayEquals(new double[]{50.0, 20.0}, gazetteer.lookup("nowa wieś"), 1e-9);
+    }
+}
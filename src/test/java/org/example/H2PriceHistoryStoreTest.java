@@ -0,0 +1,55 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class H2PriceHistoryStoreTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void appendedRecordsAreFoundAndCounted() throws Exception {
+        LocalDate today = LocalDate.of(2026, 10, 19);
+        String path = new File(directory, "history").getPath();
+
+        H2PriceHistoryStore store = new H2PriceHistoryStore(path);
+        try {
+            store.append(List.of(
+                    new PriceHistoryManager.PriceRecord(today.minusDays(40), 2100, "iPhone 13", "128GB", false),
+                    new PriceHistoryManager.PriceRecord(today.minusDays(5), 1900, "iPhone 13", "128GB", false),
+                    new PriceHistoryManager.PriceRecord(today, 2000, "iPhone 13", "128GB", false),
+                    new PriceHistoryManager.PriceRecord(today, 2300, "iPhone 13", "128GB", true),
+                    new PriceHistoryManager.PriceRecord(today, 3100, "iPhone 14", "128GB", false)));
+            assertEquals(5, store.count());
+
+            // Klucze bez rozróżniania wielkości liter, okno dat z obu stron domknięte
+            List<PriceHistoryManager.PriceRecord> window = store.find("IPHONE 13", "128gb", false, today.minusDays(30), today);
+            assertEquals(2, window.size());
+            assertEquals(today.minusDays(5), window.get(0).getDate());
+            assertEquals(1900, window.get(0).getPrice());
+            assertEquals(today, window.get(1).getDate());
+            assertEquals("iPhone 13", window.get(1).getModel());
+            assertEquals("128GB", window.get(1).getStorageCapacity());
+
+            assertEquals(3, store.find("iPhone 13", "128GB", false, null, null).size());
+            assertEquals(1, store.find("iPhone 13", "128GB", true, null, null).size());
+            assertEquals(5, store.findAll().size());
+        } finally {
+            store.close();
+        }
+
+        // Dane trwałe po ponownym otwarciu pliku bazy
+        H2PriceHistoryStore reopened = new H2PriceHistoryStore(path);
+        try {
+            assertEquals(5, reopened.count());
+        } finally {
+            reopened.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HistoryMigrationTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void migratesJsonHistoryIntoH2() throws Exception {
+        String source = new File(directory, "price_history.json").getPath();
+        String target = new File(directory, "price_history").getPath();
+        LocalDate start = LocalDate.of(2026, 9, 1);
+        List<PriceHistoryManager.PriceRecord> records = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            records.add(new PriceHistoryManager.PriceRecord(start.plusDays(i), 2000 + i, "iPhone 13", "128GB", i % 2 == 0));
+        }
+        new JsonPriceHistoryStore(source).append(records);
+
+        assertEquals(0, HistoryMigration.run(new String[]{source, target}));
+
+        H2PriceHistoryStore store = new H2PriceHistoryStore(target);
+        try {
+            assertEquals(25, store.count());
+            List<PriceHistoryManager.PriceRecord> withProtection = store.find("iPhone 13", "128GB", true, null, null);
+            assertEquals(13, withProtection.size());
+            assertEquals(start, withProtection.get(0).getDate());
+            assertEquals(2000, withProtection.get(0).getPrice());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void refusesToMigrateIntoNonEmptyStore() throws Exception {
+        String source = new File(directory, "price_history.json").getPath();
+        String target = new File(directory, "price_history").getPath();
+        new JsonPriceHistoryStore(source).append(List.of(
+                new PriceHistoryManager.PriceRecord(LocalDate.of(2026, 10, 1), 2500, "iPhone 14", "256GB", false)));
+
+        assertEquals(0, HistoryMigration.run(new String[]{source, target}));
+        assertEquals(2, HistoryMigration.run(new String[]{source, target}));
+
+        H2PriceHistoryStore store = new H2PriceHistoryStore(target);
+        try {
+            assertEquals(1, store.count());
+        } finally {
+            store.close();
+        }
+    }
+}
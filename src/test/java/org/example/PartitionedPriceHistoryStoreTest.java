@@ -0,0 +1,154 @@
+package org.example;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionedPriceHistoryStoreTest {
+    @TempDir
+    File directory;
+
+    private static PriceHistoryManager.PriceRecord record(LocalDate date, double price, String model) {
+        return new PriceHistoryManager.PriceRecord(date, price, model, "128GB", false);
+    }
+
+    // Magazyn bez polityki przechowywania
+    private PartitionedPriceHistoryStore plainStore(boolean partitionByModel) {
+        return new PartitionedPriceHistoryStore(directory, partitionByModel, 0, 0, 0);
+    }
+
+    private static int archivedRows(File file) throws Exception {
+        return new JSONArray(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).length();
+    }
+
+    @Test
+    void routesRecordsIntoHalfOpenMonthPartitions() {
+        PartitionedPriceHistoryStore store = plainStore(false);
+        store.append(List.of(
+                record(LocalDate.of(2026, 8, 31), 2000, "iPhone 13"),
+                record(LocalDate.of(2026, 9, 1), 2100, "iPhone 13"),
+                record(LocalDate.of(2026, 9, 30), 2200, "iPhone 13"),
+                record(LocalDate.of(2026, 10, 1), 2300, "iPhone 13")));
+
+        assertTrue(new File(directory, "2026-08.json").exists());
+        assertTrue(new File(directory, "2026-09.json").exists());
+        assertTrue(new File(directory, "2026-10.json").exists());
+        assertEquals(4, store.count());
+        // Okno domknięte z obu stron, przechodzące przez granice miesięcy
+        List<PriceHistoryManager.PriceRecord> window = store.find("iPhone 13", "128GB", false,
+                LocalDate.of(2026, 8, 31), LocalDate.of(2026, 9, 30));
+        assertEquals(3, window.size());
+    }
+
+    @Test
+    void scanSkipsPartitionsOutsideWindowOrModel() throws Exception {
+        PartitionedPriceHistoryStore store = plainStore(true);
+        store.append(List.of(
+                record(LocalDate.of(2026, 7, 15), 1800, "iPhone 13"),
+                record(LocalDate.of(2026, 9, 10), 2000, "iPhone 13"),
+                record(LocalDate.of(2026, 9, 12), 3000, "iPhone 14 Pro")));
+
+        // Uszkodzone pliki: odczyt którejkolwiek z tych partycji zakończyłby się wyjątkiem
+        Files.writeString(new File(directory, "2026-07_iphone-13.json").toPath(), "uszkodzony");
+        Files.writeString(new File(directory, "2026-09_iphone-14-pro.json").toPath(), "uszkodzony");
+
+        List<PriceHistoryManager.PriceRecord> found = store.find("iPhone 13", "128GB", false,
+                LocalDate.of(2026, 9, 1), LocalDate.of(2026, 9, 30));
+        assertEquals(1, found.size());
+        assertEquals(2000, found.get(0).getPrice());
+    }
+
+    @Test
+    void reloadsPartitionsAndLayoutFromManifest() {
+        plainStore(true).append(List.of(
+                record(LocalDate.of(2026, 9, 10), 2000, "iPhone 13"),
+                record(LocalDate.of(2026, 10, 2), 3000, "iPhone 14 Pro")));
+
+        // Układ katalogu pochodzi z manifestu, a nie z argumentu konstruktora
+        PartitionedPriceHistoryStore reopened = plainStore(false);
+        assertEquals(2, reopened.count());
+        assertEquals(1, reopened.find("iPhone 14 Pro", "128GB", false, null, null).size());
+        reopened.append(List.of(record(LocalDate.of(2026, 10, 3), 3100, "iPhone 14 Pro")));
+        assertTrue(new File(directory, "2026-10_iphone-14-pro.json").exists());
+        assertFalse(new File(directory, "2026-10.json").exists());
+        assertEquals(2, reopened.find("iPhone 14 Pro", "128GB", false, null, null).size());
+    }
+
+    @Test
+    void downsamplesOldPartitionsToDailyMedian() {
+        LocalDate day = YearMonth.now().minusMonths(2).atDay(10);
+        PartitionedPriceHistoryStore store = new PartitionedPriceHistoryStore(directory, false, 0, 1, 0);
+        store.append(List.of(
+                record(day, 100, "iPhone 13"),
+                record(day, 300, "iPhone 13"),
+                record(day, 200, "iPhone 13"),
+                record(day.plusDays(1), 500, "iPhone 13"),
+                new PriceHistoryManager.PriceRecord(day, 900, "iPhone 13", "128GB", true)));
+
+        List<PriceHistoryManager.PriceRecord> rows = store.findAll();
+        rows.sort(Comparator.comparing(PriceHistoryManager.PriceRecord::getDate)
+                .thenComparing(PriceHistoryManager.PriceRecord::hasProtectionPackage));
+        assertEquals(3, rows.size());
+        assertEquals(3, store.count());
+        assertEquals(200, rows.get(0).getPrice());
+        assertEquals(900, rows.get(1).getPrice());
+        assertEquals(500, rows.get(2).getPrice());
+    }
+
+    @Test
+    void compressionReplacesPlainPartitionFile() {
+        YearMonth month = YearMonth.now().minusMonths(3);
+        PartitionedPriceHistoryStore store = new PartitionedPriceHistoryStore(directory, false, 2, 0, 0);
+        store.append(List.of(record(month.atDay(5), 2000, "iPhone 13"), record(LocalDate.now(), 2100, "iPhone 13")));
+
+        assertTrue(new File(directory, month + ".json.gz").exists());
+        assertFalse(new File(directory, month + ".json").exists());
+        // Bieżący miesiąc nie jest zmieniany
+        assertTrue(new File(directory, YearMonth.now() + ".json").exists());
+        assertEquals(2, store.findAll().size());
+        assertEquals(2, new PartitionedPriceHistoryStore(directory, false, 2, 0, 0).findAll().size());
+    }
+
+    @Test
+    void retentionRunsOnlyOnWrite() {
+        YearMonth month = YearMonth.now().minusMonths(3);
+        plainStore(false).append(List.of(record(month.atDay(5), 2000, "iPhone 13")));
+
+        PartitionedPriceHistoryStore store = new PartitionedPriceHistoryStore(directory, false, 2, 0, 0);
+        assertEquals(1, store.findAll().size());
+        assertTrue(new File(directory, month + ".json").exists());
+
+        store.append(List.of(record(LocalDate.now(), 2100, "iPhone 13")));
+        assertTrue(new File(directory, month + ".json.gz").exists());
+        assertFalse(new File(directory, month + ".json").exists());
+    }
+
+    @Test
+    void lateAppendToArchivedMonthIsMergedIntoArchive() throws Exception {
+        YearMonth month = YearMonth.now().minusMonths(4);
+        File archived = new File(new File(directory, "archive"), month + ".json");
+
+        new PartitionedPriceHistoryStore(directory, false, 0, 0, 3).append(List.of(
+                record(month.atDay(5), 2000, "iPhone 13"), record(month.atDay(6), 2050, "iPhone 13")));
+        assertTrue(archived.exists());
+        assertEquals(2, archivedRows(archived));
+
+        // Późny rekord odtwarza partycję; kolejne zastosowanie polityki dołącza go do archiwum
+        new PartitionedPriceHistoryStore(directory, false, 0, 0, 3).append(List.of(record(month.atDay(20), 1900, "iPhone 13")));
+        assertFalse(new File(directory, month + ".json").exists());
+        assertEquals(3, archivedRows(archived));
+        assertEquals(0, new PartitionedPriceHistoryStore(directory, false, 0, 0, 3).count());
+    }
+}
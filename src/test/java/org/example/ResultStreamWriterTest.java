@@ -0,0 +1,45 @@
+package org.example;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultStreamWriterTest {
+    @Test
+    void batchStdoutCarriesOnlyRecords() throws Exception {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(stderr, true, StandardCharsets.UTF_8));
+        try {
+            PrintStream records = ResultStreamWriter.reserveStdout();
+            try (ResultStreamWriter writer = ResultStreamWriter.open("-", ResultStreamWriter.Format.JSONL, records)) {
+                // Komunikat wypisany w trakcie przebiegu (np. przy geokodowaniu) nie może trafić między rekordy
+                System.out.println("Pobieranie współrzędnych dla 3 nowych lokalizacji...");
+                writer.writeCombination("iPhone 13", "128GB", 10, 8, PriceStats.EMPTY, PriceStats.EMPTY, PriceStats.EMPTY);
+                writer.writeDeal("low_price_outliers", new Offer("iPhone 13 128GB", 1500, "https://www.olx.pl/d/oferta/1",
+                        LocalDate.of(2026, 10, 19), "", "Łódź", false, "iPhone 13", "128GB"), -1.5, 2200, 650, Double.NaN);
+                writer.writeSummary(1, 0, 1200);
+            }
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+
+        String[] lines = stdout.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("combination", new JSONObject(lines[0]).getString("type"));
+        assertEquals("deal", new JSONObject(lines[1]).getString("type"));
+        assertEquals("summary", new JSONObject(lines[2]).getString("type"));
+        assertTrue(stderr.toString(StandardCharsets.UTF_8).contains("Pobieranie współrzędnych"));
+    }
+}